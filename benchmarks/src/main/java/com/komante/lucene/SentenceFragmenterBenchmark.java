@@ -0,0 +1,70 @@
+package com.komante.lucene;
+
+import com.komante.lucene.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fragments for all occurrences of a frequent term in one text: regex based fragmenter, index based fragmenter with one fragment per
+ * occurrence, and index based fragmenter merging occurrences of one sentence window. In package of the fragmenter, which is package
+ * private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentenceFragmenterBenchmark {
+
+    /** Vocabulary rank of highlighted term, lower rank is more frequent */
+    @Param({"10", "200"})
+    public int termRank;
+
+    private String text;
+    private int[] starts;
+    private int[] ends;
+    private int termCount;
+    private int maxFragments;
+    private LegacySentenceFragmenter legacyFragmenter;
+    private SentenceFragmenter fragmenter;
+
+    @Setup
+    public void setup() {
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 5_000);
+        text = corpus.text(200);
+        String term = corpus.word(termRank);
+        starts = new int[text.length()];
+        ends = new int[text.length()];
+        for (int i = text.indexOf(term); i != -1; i = text.indexOf(term, i + 1)) {
+            starts[termCount] = i;
+            ends[termCount] = i + term.length();
+            termCount++;
+        }
+        LuceneConfig.HighlightsConfig highlightsConfig = LuceneConfig.highlightsConfigBuilder().build();
+        maxFragments = highlightsConfig.getNumberOfDocumentFragments();
+        legacyFragmenter = new LegacySentenceFragmenter(highlightsConfig);
+        fragmenter = new SentenceFragmenter(highlightsConfig);
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (int i = 0; i < termCount && i < maxFragments; i++) {
+            blackhole.consume(legacyFragmenter.getSentenceFragment(text, null, starts[i], ends[i]));
+        }
+    }
+
+    @Benchmark
+    public void indexBased(Blackhole blackhole) {
+        for (int i = 0; i < termCount && i < maxFragments; i++) {
+            blackhole.consume(fragmenter.getSentenceFragment(text, null, starts[i], ends[i]));
+        }
+    }
+
+    @Benchmark
+    public Object indexBasedMerged() {
+        return fragmenter.getSentenceFragments(text, starts, ends, termCount, maxFragments);
+    }
+}
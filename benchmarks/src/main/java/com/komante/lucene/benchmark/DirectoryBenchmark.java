@@ -0,0 +1,84 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory types of an NRT index. Searches over a 20k documents index show read path costs: MMAP and FS_DEFAULT read from page cache
+ * without copies, NIOFS pays a system call per read, BYTE_BUFFERS reads from heap. Index and refresh of small batches shows flush
+ * costs, where NRT_CACHING keeps new small segments in heap, and BYTE_BUFFERS never touches disk. Page cache is warm in all modes,
+ * so differences are smaller than with cold disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryBenchmark {
+
+    private static final String INDEX_NAME = "directory";
+
+    @Param({"FS_DEFAULT", "MMAP", "NIOFS", "NRT_CACHING", "BYTE_BUFFERS"})
+    public DirectoryType directoryType;
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private SyntheticCorpus corpus;
+    private Query query;
+    private int nextId;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("directory");
+        index = new Index(INDEX_NAME);
+        LuceneConfig.IndexConfig indexConfig = LuceneConfig.indexConfigBuilder().nrt(true).directoryType(directoryType).build();
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .indexConfigs(Map.of(INDEX_NAME, indexConfig)).build());
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        corpus = new SyntheticCorpus(42, 20_000);
+        for (int i = 0; i < 20; i++) {
+            luceneManager.indexDocuments(index, corpus.documents(i * 1000, 1000, 5), true);
+        }
+        nextId = 20_000;
+        luceneManager.refreshSearcher(index);
+        query = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("content", corpus.word(20))), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("content", corpus.word(300))), BooleanClause.Occur.SHOULD)
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public SearchPage search() {
+        return luceneManager.searchPage(index, query, SearchOptions.searchOptionsBuilder().storedFields(Set.of("id")).build());
+    }
+
+    /** Flushes a small segment on each refresh, as NRT index under constant writes */
+    @Benchmark
+    public void indexAndRefresh() {
+        List<Document> documents = corpus.documents(nextId, 10, 5);
+        nextId += 10;
+        luceneManager.indexDocuments(index, documents, false);
+        luceneManager.refreshSearcher(index);
+    }
+}
@@ -0,0 +1,68 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Term vectors with global statistics, for one document and for a batch of 10, with and without offsets. Ids are chosen from a
+ * deterministic sequence, so each invocation reads different documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentTermsBenchmark {
+
+    private static final int DOCUMENTS = 10_000;
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"false", "true"})
+    public boolean includeOffsets;
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("document-terms");
+        index = new Index("terms");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 20_000);
+        for (int i = 0; i < DOCUMENTS / 1000; i++) {
+            luceneManager.indexDocuments(index, corpus.documents(i * 1000, 1000, 20), true);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public List<TermVectorData> documentTerms() {
+        return luceneManager.getDocumentTerms(index, "id", String.valueOf(random.nextInt(DOCUMENTS)), "content", includeOffsets);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<DocumentTermsData> documentsTermsBatch() {
+        List<String> ids = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ids.add(String.valueOf(random.nextInt(DOCUMENTS)));
+        }
+        return luceneManager.getDocumentsTerms(index, "id", ids, "content", includeOffsets);
+    }
+}
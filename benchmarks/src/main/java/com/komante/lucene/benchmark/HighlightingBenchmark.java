@@ -0,0 +1,79 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Highlighting of top 10 hits of long documents: Lucene Highlighter with TokenSources, custom term vector highlights with sentence
+ * fragmenter, and offsets highlighting of one page. Max search size is set to page size, so all three highlight the same hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighlightingBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+
+    /** Sentences per document */
+    @Param({"50", "500"})
+    public int documentSentences;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private Query query;
+    private String queryTerm;
+    private SearchOptions options;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("highlighting");
+        index = new Index("highlighting");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder().maxSearchSize(PAGE_SIZE)
+            .highlightsConfig(LuceneConfig.highlightsConfigBuilder().parallel(parallel).build()).build());
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 20_000);
+        for (int i = 0; i < 10; i++) {
+            luceneManager.indexDocuments(index, corpus.documents(i * 100, 100, documentSentences), true);
+        }
+        queryTerm = corpus.word(100);
+        query = new TermQuery(new Term("content", queryTerm));
+        options = SearchOptions.searchOptionsBuilder().pageSize(PAGE_SIZE).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public List<LuceneHighlightResult<Document>> highlighter() {
+        return luceneManager.getHighlights(index, query);
+    }
+
+    @Benchmark
+    public List<LuceneHighlightResult<Document>> customHighlights() {
+        return luceneManager.getCustomHighlights(index, query, queryTerm::equals);
+    }
+
+    @Benchmark
+    public SearchPage offsetsHighlights() {
+        return luceneManager.highlightPage(index, query, options, null);
+    }
+}
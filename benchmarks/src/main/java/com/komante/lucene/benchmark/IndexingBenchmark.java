@@ -0,0 +1,55 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of indexDocuments, in documents per second. Documents are generated once, so only analysis and indexing are measured.
+ * Changes are not committed, segments are flushed when RAM buffer is full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    /** Sentences per document */
+    @Param({"5", "50"})
+    public int documentSentences;
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private List<Document> documents;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("indexing");
+        index = new Index("indexing");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        documents = new SyntheticCorpus(42, 20_000).documents(0, BATCH_SIZE, documentSentences);
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long indexDocuments() {
+        return luceneManager.indexDocuments(index, documents, false);
+    }
+}
@@ -0,0 +1,64 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of search, which returns whole stored documents of all hits up to max search size. Query matches most of 20k documents, so
+ * cost grows with max search size, mostly from collecting bigger top docs and loading stored fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int maxSearchSize;
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private Query query;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("search");
+        index = new Index("search");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder().maxSearchSize(maxSearchSize)
+            .build());
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 20_000);
+        for (int i = 0; i < 20; i++) {
+            luceneManager.indexDocuments(index, corpus.documents(i * 1000, 1000, 5), true);
+        }
+        query = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("content", corpus.word(0))), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("content", corpus.word(200))), BooleanClause.Occur.SHOULD)
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        return luceneManager.search(index, query);
+    }
+}
@@ -0,0 +1,69 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of searches through searcher leases, while background thread adds documents and refreshes searcher. Run with growing
+ * number of threads, e.g. -t 1, -t 2, -t 4, to see how acquiring leases scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearcherLeaseBenchmark {
+
+    private Path indexDir;
+    private LuceneManager luceneManager;
+    private Index index;
+    private Query query;
+    private Thread refresher;
+    private volatile boolean running;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("lease");
+        index = new Index("lease");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 1000);
+        luceneManager.indexDocuments(index, corpus.documents(0, 1000, 5), true);
+        luceneManager.refreshSearcher(index);
+        query = new TermQuery(new Term("content", corpus.word(0)));
+        running = true;
+        refresher = new Thread(() -> {
+            int next = 0;
+            while (running) {
+                luceneManager.indexDocuments(index, corpus.documents(next++ % 1000, 1, 5), true);
+                luceneManager.refreshSearcher(index);
+            }
+        }, "lease-benchmark-refresher");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        refresher.join();
+        luceneManager.closeLuceneResources();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public int leasedCount() throws IOException {
+        try (SearcherLease lease = luceneManager.acquireSearcher(index)) {
+            return lease.getSearcher().count(query);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.komante.lucene.benchmark;
+
+import com.komante.lucene.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one query on multi segment index, for different number of slices searched in parallel. Sample time mode reports
+ * p50/p99 latencies. One slice searches all segments on the caller thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlicedSearchBenchmark {
+
+    private static final int SEGMENTS = 16;
+    private static final int DOCUMENTS_PER_SEGMENT = 5000;
+
+    @Param({"1", "2", "4", "8"})
+    public int slices;
+
+    private Path indexDir;
+    private ExecutorService sliceExecutor;
+    private LuceneManager luceneManager;
+    private Index index;
+    private Query query;
+    private SearchOptions options;
+
+    @Setup
+    public void setup() {
+        indexDir = BenchmarkFiles.createTempDirectory("sliced-search");
+        index = new Index("sliced");
+        SyntheticCorpus corpus = new SyntheticCorpus(42, 20_000);
+        LuceneManager indexingManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        indexingManager.openIndex(index, new StandardAnalyzer());
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            indexingManager.indexDocuments(index, corpus.documents(segment * DOCUMENTS_PER_SEGMENT, DOCUMENTS_PER_SEGMENT, 5), true);
+        }
+        indexingManager.closeLuceneResources();
+
+        LuceneConfig.IndexConfig.IndexConfigBuilder indexConfig = LuceneConfig.indexConfigBuilder();
+        if (slices > 1) {
+            sliceExecutor = Executors.newFixedThreadPool(slices);
+            indexConfig.sliceExecutor(sliceExecutor).maxDocsPerSlice(Integer.MAX_VALUE)
+                .maxSegmentsPerSlice((SEGMENTS + slices - 1) / slices);
+        }
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), false).toBuilder()
+            .indexConfigs(Map.of(index.getName(), indexConfig.build())).build());
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        try (SearcherLease lease = luceneManager.acquireSearcher(index)) {
+            System.out.printf("%nSegments: %d, slices: %d%n", lease.getReader().leaves().size(), lease.getSearcher().getSlices() == null ?
+                1 : lease.getSearcher().getSlices().length);
+        }
+        query = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("content", corpus.word(3))), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("content", corpus.word(40))), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("content", corpus.word(500))), BooleanClause.Occur.SHOULD)
+            .build();
+        options = SearchOptions.searchOptionsBuilder().pageSize(10).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        luceneManager.closeLuceneResources();
+        if (sliceExecutor != null) {
+            sliceExecutor.shutdown();
+        }
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public SearchPage search() {
+        return luceneManager.searchPage(index, query, options);
+    }
+}
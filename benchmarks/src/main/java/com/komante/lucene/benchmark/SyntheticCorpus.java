@@ -0,0 +1,110 @@
+package com.komante.lucene.benchmark;
+
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of documents for benchmarks. Same seed always produces the same corpus, so results are reproducible offline.
+ * Words follow Zipf-like distribution, so there are few very frequent and many rare terms, like in natural text.
+ */
+public class SyntheticCorpus {
+
+    private static final String[] SYLLABLES = {"ka", "re", "mi", "to", "lu", "sa", "ne", "vo", "di", "ra", "po", "ze", "ti", "go",
+        "la", "me", "ni", "ko", "su", "va"};
+
+    /** Content field type, indexed with offsets and term vectors, so all highlighting and term vector paths can be used */
+    public static final FieldType CONTENT_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        CONTENT_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_TYPE.setStoreTermVectors(true);
+        CONTENT_TYPE.setStoreTermVectorPositions(true);
+        CONTENT_TYPE.setStoreTermVectorOffsets(true);
+        CONTENT_TYPE.freeze();
+    }
+
+    private final Random random;
+    private final String[] vocabulary;
+    private final double[] cumulativeProbability;
+
+    public SyntheticCorpus(long seed, int vocabularySize) {
+        random = new Random(seed);
+        vocabulary = new String[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            StringBuilder word = new StringBuilder();
+            int n = i;
+            do {
+                word.append(SYLLABLES[n % SYLLABLES.length]);
+                n /= SYLLABLES.length;
+            } while (n > 0);
+            vocabulary[i] = word.toString();
+        }
+        cumulativeProbability = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            sum += 1.0 / (i + 1);
+            cumulativeProbability[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            cumulativeProbability[i] /= sum;
+        }
+    }
+
+    /** Word by frequency rank, 0 is the most frequent */
+    public String word(int rank) {
+        return vocabulary[rank];
+    }
+
+    public String randomWord() {
+        int index = Arrays.binarySearch(cumulativeProbability, random.nextDouble());
+        return vocabulary[index >= 0 ? index : Math.min(-index - 1, vocabulary.length - 1)];
+    }
+
+    public String sentence(int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = randomWord();
+            if (i == 0) {
+                sentence.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                sentence.append(' ').append(word);
+            }
+        }
+        return sentence.append(random.nextInt(10) == 0 ? '?' : '.').toString();
+    }
+
+    public String text(int sentences) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(sentence(5 + random.nextInt(20)));
+        }
+        return text.toString();
+    }
+
+    /** Document with stored id, content with offsets and term vectors, and numeric and category DocValues */
+    public Document document(int id, int sentences) {
+        Document document = new Document();
+        document.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+        document.add(new Field("content", text(sentences), CONTENT_TYPE));
+        document.add(new NumericDocValuesField("number", random.nextInt(1000)));
+        document.add(new SortedDocValuesField("category", new BytesRef("category" + random.nextInt(20))));
+        return document;
+    }
+
+    public List<Document> documents(int firstId, int count, int sentences) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(document(firstId + i, sentences));
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,19 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** State of read and write executors of one index in {@link AsyncLuceneManager} */
+@Getter
+@AllArgsConstructor
+@ToString
+public class AsyncExecutorStats {
+    private int readsQueued;
+    private int readsActive;
+    /** Reads rejected because queue was full, since executors were created */
+    private long readsRejected;
+    private int writesQueued;
+    private int writesActive;
+    private long writesRejected;
+}
@@ -0,0 +1,68 @@
+package com.komante.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking variant of {@link LuceneManager} operations. Each index has bounded executors, one for reads and one for writes, so slow
+ * commits and merges don't delay searches. When queue of an executor is full, returned future fails with RejectedExecutionException,
+ * which callers should treat as backpressure.
+ */
+public interface AsyncLuceneManager {
+
+    /** Blocking manager which runs the operations */
+    LuceneManager getLuceneManager();
+
+    /** Stops accepting operations, queued ones are completed. Doesn't close the blocking manager */
+    void closeExecutors();
+
+    /**
+     * Stops accepting operations of the index and removes its executors, queued ones are completed. Call when index is no longer used,
+     * its next operation creates new executors
+     */
+    void closeExecutors(Index index);
+
+    /** Queue depths, active operations and rejections of executors of the index */
+    AsyncExecutorStats getExecutorStats(Index index);
+
+    CompletableFuture<Long> indexDocument(Index index, Document document, boolean commit);
+
+    CompletableFuture<Long> indexDocuments(Index index, List<Document> documents, boolean commit);
+
+    <T> CompletableFuture<Long> upsert(Index index, String idField, List<T> entities, DocumentConverter<T> documentConverter,
+                                       boolean commit);
+
+    CompletableFuture<Void> deleteDocuments(Index index, Query query);
+
+    CompletableFuture<Long> commit(Index index);
+
+    /** Runs on write executor, because reopening after big changes can be slow */
+    CompletableFuture<Void> refreshSearcher(Index index);
+
+    CompletableFuture<List<Document>> search(Index index, Query query);
+
+    CompletableFuture<Integer> count(Index index, Query query);
+
+    CompletableFuture<Boolean> exists(Index index, Query query);
+
+    CompletableFuture<SearchPage> searchPage(Index index, Query query, SearchOptions options, ScoreDoc after);
+
+    CompletableFuture<FacetResult> facets(Index index, Query query, FacetRequest request);
+
+    CompletableFuture<List<LuceneHighlightResult<Document>>> getHighlights(Index index, Query query);
+
+    CompletableFuture<SearchPage> highlightPage(Index index, Query query, SearchOptions options, ScoreDoc after);
+
+    CompletableFuture<List<LuceneHighlightResult<Document>>> getCustomHighlights(Index index, Query query,
+                                                                                  Predicate<String> highlightTermPredicate);
+
+    CompletableFuture<Optional<Document>> getDocumentById(Index index, String idField, String idValue);
+
+    CompletableFuture<List<Document>> getDocumentsByIds(Index index, String idField, List<String> idValues);
+}
@@ -0,0 +1,31 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/** Copy of one commit of an index, by backup or replica sync */
+@Getter
+@AllArgsConstructor
+@ToString
+public class BackupResult {
+    private Index index;
+    /** Generation of the copied commit */
+    private long generation;
+    /** Files which were missing in destination */
+    private int copiedFiles;
+    private long copiedBytes;
+    /** Files of the commit already present in destination, from previous copy */
+    private int reusedFiles;
+    private long durationMillis;
+
+    /** Copies of all shards of one index, with the highest generation of shards */
+    static BackupResult sum(Index index, List<BackupResult> results) {
+        return new BackupResult(index, results.stream().mapToLong(BackupResult::getGeneration).max().orElse(-1),
+            results.stream().mapToInt(BackupResult::getCopiedFiles).sum(), results.stream().mapToLong(BackupResult::getCopiedBytes).sum(),
+            results.stream().mapToInt(BackupResult::getReusedFiles).sum(), results.stream().mapToLong(BackupResult::getDurationMillis).max()
+            .orElse(0));
+    }
+}
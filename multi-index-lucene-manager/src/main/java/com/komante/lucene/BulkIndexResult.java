@@ -0,0 +1,17 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Statistics of one bulk indexing */
+@Getter
+@AllArgsConstructor
+@ToString
+public class BulkIndexResult {
+    private long documents;
+    private long elapsedMillis;
+    private double documentsPerSecond;
+    /** Generation of the last added document, to wait for in NRT index */
+    private long generation;
+}
@@ -0,0 +1,150 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Indexes stream of entities with several threads. Caller thread puts entities into bounded queue, workers from shared bulk executor
+ * convert them to documents and add them to IndexWriter, which analyzes documents of different threads concurrently. Executor is
+ * shared by all bulk indexing, so while none of the workers has started, caller indexes entities itself instead of waiting for them.
+ */
+class BulkIndexer<T> {
+
+    private static final Object END = new Object();
+
+    private final Index index;
+    private final IndexWriter writer;
+    private final DocumentConverter<T> documentConverter;
+    private final ExecutorService executor;
+    private final int threads;
+    private final BlockingQueue<Object> queue;
+    private final LongAdder documents = new LongAdder();
+    private final AtomicLong generation = new AtomicLong(-1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    /** Released by each started worker when it finishes */
+    private final Semaphore finishedWorkers = new Semaphore(0);
+    /** Guarded by this. Workers which start after the end of input don't run */
+    private int startedWorkers;
+    private boolean ended;
+
+    BulkIndexer(Index index, IndexWriter writer, DocumentConverter<T> documentConverter, ExecutorService executor, int threads,
+                int queueSize) {
+        this.index = index;
+        this.writer = writer;
+        this.documentConverter = documentConverter;
+        this.executor = executor;
+        this.threads = threads;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    BulkIndexResult index(Stream<T> entities) {
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::runWorker);
+        }
+        try {
+            entities.forEach(this::put);
+        } finally {
+            int workers;
+            synchronized (this) {
+                ended = true;
+                workers = startedWorkers;
+            }
+            //without started workers, caller indexed everything but the last offered entities
+            drainQueue();
+            for (int i = 0; i < workers; i++) {
+                put(END);
+            }
+            finishedWorkers.acquire(workers);
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Bulk indexing failed for " + index, failure.get());
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long count = documents.sum();
+        return new BulkIndexResult(count, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), count * 1_000_000_000.0 / Math.max(elapsedNanos, 1),
+            generation.get());
+    }
+
+    /**
+     * Adds entity to queue. When queue is full, caller indexes its head itself while no worker has started, otherwise waits for space.
+     * Stops producer when indexing has failed
+     */
+    @SneakyThrows(InterruptedException.class)
+    private void put(Object entity) {
+        while (!queue.offer(entity)) {
+            if (failure.get() != null && entity != END) {
+                throw new RuntimeException("Bulk indexing failed for " + index, failure.get());
+            }
+            if (entity != END && !hasStartedWorkers()) {
+                Object head = queue.poll();
+                if (head != null) {
+                    indexEntity(head);
+                }
+            } else if (queue.offer(entity, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized boolean hasStartedWorkers() {
+        return startedWorkers > 0;
+    }
+
+    private void drainQueue() {
+        if (!hasStartedWorkers()) {
+            Object entity;
+            while ((entity = queue.poll()) != null) {
+                indexEntity(entity);
+            }
+        }
+    }
+
+    private void runWorker() {
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            startedWorkers++;
+        }
+        try {
+            work();
+        } finally {
+            finishedWorkers.release();
+        }
+    }
+
+    /** After first failure, workers only drain the queue until the end */
+    @SneakyThrows(InterruptedException.class)
+    private void work() {
+        Object entity;
+        while ((entity = queue.take()) != END) {
+            indexEntity(entity);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexEntity(Object entity) {
+        if (failure.get() != null) {
+            return;
+        }
+        try {
+            long seqNo = writer.addDocument(documentConverter.getDocument((T) entity));
+            generation.accumulateAndGet(seqNo, Math::max);
+            documents.increment();
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
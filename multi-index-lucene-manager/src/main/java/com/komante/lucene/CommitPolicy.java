@@ -0,0 +1,13 @@
+package com.komante.lucene;
+
+/** When changes of an index are committed, in addition to explicit commits */
+public enum CommitPolicy {
+    /** Only explicit commits, and commit on close */
+    NEVER,
+    /** After configured number of added documents */
+    EVERY_N_DOCS,
+    /** Periodically, if there are uncommitted changes */
+    EVERY_T_MILLIS,
+    /** Whenever some writer asks for durability of its changes. Concurrent requests share one commit */
+    ON_DEMAND
+}
@@ -0,0 +1,143 @@
+package com.komante.lucene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group commit of one index. Commit requests which arrive before scheduled commit starts share it, so many writers pay for one fsync.
+ * Writers can get a future which completes when their change, identified by generation, is committed.
+ */
+@Slf4j
+class CommitScheduler {
+
+    private final Index index;
+    private final IndexWriter writer;
+    private final LuceneConfig.IndexConfig indexConfig;
+    private final ScheduledExecutorService executor;
+    private final LuceneMetricsListener metricsListener;
+    private final AtomicInteger uncommittedDocuments = new AtomicInteger();
+    /** Waiting for durability, by generation */
+    private final TreeMap<Long, CompletableFuture<Long>> waiters = new TreeMap<>();
+    private ScheduledFuture<?> periodicCommit;
+    /** Requested commit which hasn't started yet, new requests join it */
+    private CompletableFuture<Long> nextCommit;
+    private long committedGeneration = -1;
+
+    CommitScheduler(Index index, IndexWriter writer, LuceneConfig.IndexConfig indexConfig, ScheduledExecutorService executor,
+                    LuceneMetricsListener metricsListener) {
+        this.index = index;
+        this.writer = writer;
+        this.indexConfig = indexConfig;
+        this.executor = executor;
+        this.metricsListener = metricsListener;
+        if (indexConfig.getCommitPolicy() == CommitPolicy.EVERY_T_MILLIS) {
+            long interval = indexConfig.getCommitIntervalMillis();
+            periodicCommit = executor.scheduleWithFixedDelay(this::commitIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Documents beyond the commit threshold count towards the next commit, and only the thread which crossed it requests commit */
+    void documentsAdded(int count) {
+        if (indexConfig.getCommitPolicy() != CommitPolicy.EVERY_N_DOCS) {
+            return;
+        }
+        int commitEveryDocs = indexConfig.getCommitEveryDocs();
+        int previous = uncommittedDocuments.getAndUpdate(current -> (current + count) % commitEveryDocs);
+        if (previous + count >= commitEveryDocs) {
+            requestCommit();
+        }
+    }
+
+    /** Commit which starts after this request, shared with other requests */
+    synchronized CompletableFuture<Long> requestCommit() {
+        if (nextCommit == null) {
+            nextCommit = new CompletableFuture<>();
+            executor.execute(this::commit);
+        }
+        return nextCommit;
+    }
+
+    /**
+     * Future completes when change with given generation is committed. With ON_DEMAND policy it requests commit, otherwise it waits for
+     * commit by policy or explicit commit.
+     */
+    synchronized CompletableFuture<Long> whenDurable(long generation) {
+        if (generation <= committedGeneration) {
+            return CompletableFuture.completedFuture(committedGeneration);
+        }
+        CompletableFuture<Long> waiter = waiters.computeIfAbsent(generation, g -> new CompletableFuture<>());
+        if (indexConfig.getCommitPolicy() == CommitPolicy.ON_DEMAND) {
+            requestCommit();
+        }
+        return waiter;
+    }
+
+    /**
+     * Stops periodic commits and commits remaining changes, so all waiters are completed. Commits on calling thread, because waiting for
+     * commit executor from its own thread could deadlock
+     */
+    void close() {
+        if (periodicCommit != null) {
+            periodicCommit.cancel(false);
+        }
+        synchronized (this) {
+            if (nextCommit == null) {
+                nextCommit = new CompletableFuture<>();
+            }
+        }
+        commit();
+    }
+
+    private void commitIfChanged() {
+        if (writer.hasUncommittedChanges()) {
+            requestCommit();
+        }
+    }
+
+    private void commit() {
+        CompletableFuture<Long> commitFuture;
+        synchronized (this) {
+            commitFuture = nextCommit;
+            nextCommit = null;
+        }
+        if (commitFuture == null) {
+            //already committed by close
+            return;
+        }
+        try {
+            //IndexWriter serializes concurrent commits, so requests made during this commit wait for the next one
+            long start = System.nanoTime();
+            long generation = writer.commit();
+            metricsListener.committed(index, System.nanoTime() - start);
+            completeWaiters(generation);
+            commitFuture.complete(generation);
+        } catch (Exception e) {
+            log.error("Commit failed for {}", index, e);
+            failWaiters(e);
+            commitFuture.completeExceptionally(e);
+        }
+    }
+
+    private synchronized void completeWaiters(long generation) {
+        committedGeneration = Math.max(committedGeneration, generation);
+        Iterator<Map.Entry<Long, CompletableFuture<Long>>> iterator = waiters.headMap(committedGeneration, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().getValue().complete(committedGeneration);
+            iterator.remove();
+        }
+    }
+
+    private synchronized void failWaiters(Exception e) {
+        waiters.values().forEach(waiter -> waiter.completeExceptionally(e));
+        waiters.clear();
+    }
+}
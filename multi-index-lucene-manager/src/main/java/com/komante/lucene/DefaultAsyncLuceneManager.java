@@ -0,0 +1,210 @@
+package com.komante.lucene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs operations of blocking manager on executors of each index, created on first use with sizes from index config. Threads of an
+ * executor stop after a minute without operations, so idle and evicted indexes don't hold them.
+ */
+@Slf4j
+public class DefaultAsyncLuceneManager implements AsyncLuceneManager {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final LuceneManager luceneManager;
+    private final LuceneConfig luceneConfig;
+    private final Map<Index, IndexExecutors> executors = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public DefaultAsyncLuceneManager(LuceneManager luceneManager, LuceneConfig luceneConfig) {
+        this.luceneManager = luceneManager;
+        this.luceneConfig = luceneConfig;
+    }
+
+    @Override
+    public LuceneManager getLuceneManager() {
+        return luceneManager;
+    }
+
+    @Override
+    public void closeExecutors() {
+        closed = true;
+        executors.values().forEach(IndexExecutors::shutdown);
+    }
+
+    @Override
+    public void closeExecutors(Index index) {
+        IndexExecutors indexExecutors = executors.remove(index);
+        if (indexExecutors != null) {
+            indexExecutors.shutdown();
+        }
+    }
+
+    @Override
+    public AsyncExecutorStats getExecutorStats(Index index) {
+        IndexExecutors indexExecutors = executors(index);
+        ThreadPoolExecutor reads = indexExecutors.reads;
+        ThreadPoolExecutor writes = indexExecutors.writes;
+        return new AsyncExecutorStats(reads.getQueue().size(), reads.getActiveCount(), indexExecutors.readsRejected.sum(),
+                writes.getQueue().size(), writes.getActiveCount(), indexExecutors.writesRejected.sum());
+    }
+
+    @Override
+    public CompletableFuture<Long> indexDocument(Index index, Document document, boolean commit) {
+        return write(index, () -> luceneManager.indexDocument(index, document, commit));
+    }
+
+    @Override
+    public CompletableFuture<Long> indexDocuments(Index index, List<Document> documents, boolean commit) {
+        return write(index, () -> luceneManager.indexDocuments(index, documents, commit));
+    }
+
+    @Override
+    public <T> CompletableFuture<Long> upsert(Index index, String idField, List<T> entities, DocumentConverter<T> documentConverter,
+                                              boolean commit) {
+        return write(index, () -> luceneManager.upsert(index, idField, entities, documentConverter, commit));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteDocuments(Index index, Query query) {
+        return write(index, () -> {
+            luceneManager.deleteDocuments(index, query);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> commit(Index index) {
+        return write(index, () -> luceneManager.commit(index));
+    }
+
+    @Override
+    public CompletableFuture<Void> refreshSearcher(Index index) {
+        return write(index, () -> {
+            luceneManager.refreshSearcher(index);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Document>> search(Index index, Query query) {
+        return read(index, () -> luceneManager.search(index, query));
+    }
+
+    @Override
+    public CompletableFuture<Integer> count(Index index, Query query) {
+        return read(index, () -> luceneManager.count(index, query));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(Index index, Query query) {
+        return read(index, () -> luceneManager.exists(index, query));
+    }
+
+    @Override
+    public CompletableFuture<SearchPage> searchPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        return read(index, () -> luceneManager.searchPage(index, query, options, after));
+    }
+
+    @Override
+    public CompletableFuture<FacetResult> facets(Index index, Query query, FacetRequest request) {
+        return read(index, () -> luceneManager.facets(index, query, request));
+    }
+
+    @Override
+    public CompletableFuture<List<LuceneHighlightResult<Document>>> getHighlights(Index index, Query query) {
+        return read(index, () -> luceneManager.getHighlights(index, query));
+    }
+
+    @Override
+    public CompletableFuture<SearchPage> highlightPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        return read(index, () -> luceneManager.highlightPage(index, query, options, after));
+    }
+
+    @Override
+    public CompletableFuture<List<LuceneHighlightResult<Document>>> getCustomHighlights(Index index, Query query,
+                                                                                         Predicate<String> highlightTermPredicate) {
+        return read(index, () -> luceneManager.getCustomHighlights(index, query, highlightTermPredicate));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Document>> getDocumentById(Index index, String idField, String idValue) {
+        return read(index, () -> luceneManager.getDocumentById(index, idField, idValue));
+    }
+
+    @Override
+    public CompletableFuture<List<Document>> getDocumentsByIds(Index index, String idField, List<String> idValues) {
+        return read(index, () -> luceneManager.getDocumentsByIds(index, idField, idValues));
+    }
+
+    private <R> CompletableFuture<R> read(Index index, Supplier<R> operation) {
+        IndexExecutors indexExecutors = executors(index);
+        return submit(indexExecutors.reads, indexExecutors.readsRejected, operation);
+    }
+
+    private <R> CompletableFuture<R> write(Index index, Supplier<R> operation) {
+        IndexExecutors indexExecutors = executors(index);
+        return submit(indexExecutors.writes, indexExecutors.writesRejected, operation);
+    }
+
+    /** Rejected operation fails the future, instead of throwing on caller thread */
+    private <R> CompletableFuture<R> submit(ThreadPoolExecutor executor, LongAdder rejected, Supplier<R> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private IndexExecutors executors(Index index) {
+        if (closed) {
+            throw new IllegalStateException("Executors are closed");
+        }
+        return executors.computeIfAbsent(index, i -> new IndexExecutors(i, luceneConfig.getIndexConfig(i)));
+    }
+
+    private static class IndexExecutors {
+        private final ThreadPoolExecutor reads;
+        private final ThreadPoolExecutor writes;
+        private final LongAdder readsRejected = new LongAdder();
+        private final LongAdder writesRejected = new LongAdder();
+
+        IndexExecutors(Index index, LuceneConfig.IndexConfig indexConfig) {
+            log.debug("Creating async executors of {}", index);
+            reads = boundedExecutor(indexConfig.getAsyncReadThreads(), indexConfig.getAsyncReadQueueSize(),
+                    "lucene-read-" + index.getName() + "-");
+            writes = boundedExecutor(indexConfig.getAsyncWriteThreads(), indexConfig.getAsyncWriteQueueSize(),
+                    "lucene-write-" + index.getName() + "-");
+        }
+
+        void shutdown() {
+            reads.shutdown();
+            writes.shutdown();
+        }
+
+        private static ThreadPoolExecutor boundedExecutor(int threads, int queueSize, String namePrefix) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize), DefaultLuceneManager.daemonThreadFactory(namePrefix),
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,1168 @@
+package com.komante.lucene;
+
+import com.komante.lucene.IndexRegistry.PinnedHandle;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.highlight.Formatter;
+import org.apache.lucene.search.highlight.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+@Slf4j
+public class DefaultLuceneManager implements LuceneManager {
+
+    /** Suffix of alias file with directory name of current generation of reindexed index */
+    private static final String ALIAS_SUFFIX = ".alias";
+    private static final String GENERATION_SEPARATOR = "@gen";
+
+    private LuceneConfig luceneConfig;
+    private Path indexPath;
+    private IndexRegistry indexRegistry;
+    private boolean recreateIndexes;
+    private ExecutorService searchExecutor;
+    private boolean ownSearchExecutor;
+    private ScheduledExecutorService commitExecutor;
+    private ScheduledExecutorService replicaExecutor;
+    private ExecutorService bulkExecutor;
+    private MaintenanceScheduler maintenanceScheduler;
+    private QueryCache queryCache;
+    private LuceneMetricsListener metricsListener;
+    /** False with no-op metrics listener, so operations don't read the clock */
+    private boolean timed;
+
+    public DefaultLuceneManager(LuceneConfig luceneConfig) {
+        String indexLocation = luceneConfig.getIndexLocation();
+        boolean recreateIndexes = luceneConfig.isRecreateIndexes();
+        indexPath = Paths.get(indexLocation);
+        this.recreateIndexes = recreateIndexes;
+        this.luceneConfig = luceneConfig;
+        searchExecutor = luceneConfig.getSearchExecutor();
+        if (searchExecutor == null) {
+            searchExecutor = Executors.newFixedThreadPool(luceneConfig.getSearchThreads(), daemonThreadFactory("lucene-search-"));
+            ownSearchExecutor = true;
+        }
+        metricsListener = luceneConfig.getMetricsListener();
+        timed = metricsListener != LuceneMetricsListener.NO_OP;
+        bulkExecutor = Executors.newFixedThreadPool(luceneConfig.getBulkThreads(), daemonThreadFactory("lucene-bulk-"));
+        commitExecutor = Executors.newScheduledThreadPool(luceneConfig.getCommitThreads(), daemonThreadFactory("lucene-commit-"));
+        replicaExecutor = Executors.newScheduledThreadPool(luceneConfig.getReplicaThreads(), daemonThreadFactory("lucene-replica-"));
+        if (luceneConfig.getQueryCacheMaxEntries() > 0) {
+            queryCache = new LRUQueryCache(luceneConfig.getQueryCacheMaxEntries(), luceneConfig.getQueryCacheMaxRamMB() * 1024 * 1024);
+        }
+        indexRegistry = new IndexRegistry(this::openHandle, luceneConfig);
+        maintenanceScheduler = new MaintenanceScheduler(daemonThreadFactory("lucene-maintenance-"), this::runMaintenance,
+                Clock.systemDefaultZone());
+        log.debug("Starting Lucene from: {}, with recreate: {}", indexLocation, recreateIndexes);
+        if (!Files.isDirectory(indexPath)) {
+            throw new IllegalArgumentException("Directory for indices doesn't exist: " + indexPath);
+        }
+    }
+
+    @Override
+    public void closeLuceneResources() {
+        log.debug("Closing writers and readers");
+        maintenanceScheduler.close();
+        indexRegistry.close();
+        if (ownSearchExecutor) {
+            searchExecutor.shutdown();
+        }
+        commitExecutor.shutdown();
+        replicaExecutor.shutdown();
+        bulkExecutor.shutdown();
+    }
+
+    @Override
+    public void openIndex(Index index, Analyzer analyzer) {
+        openIndex(index, analyzer, recreateIndexes);
+    }
+
+
+    @Override
+    public void openIndex(Index index, Analyzer analyzer, boolean recreate) {
+        indexRegistry.register(index, analyzer, recreate, luceneConfig.isLazyOpenIndexes());
+        LuceneConfig.IndexConfig indexConfig = luceneConfig.getIndexConfig(index);
+        if (indexConfig.getMaintenanceStart() != null) {
+            maintenanceScheduler.schedule(index, indexConfig.getMaintenanceStart(), indexConfig.getMaintenanceWindowMinutes());
+        }
+    }
+
+    /** Each index is opened in its own task, together with its first searcher, so warm-up queries run at startup */
+    @Override
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    public List<IndexStartupStats> openIndexes(Map<Index, Analyzer> analyzers) {
+        List<Future<IndexStartupStats>> futures = new ArrayList<>();
+        for (Map.Entry<Index, Analyzer> entry : analyzers.entrySet()) {
+            futures.add(searchExecutor.submit(() -> openIndexWithSearcher(entry.getKey(), entry.getValue())));
+        }
+        List<IndexStartupStats> startupStats = new ArrayList<>();
+        for (Future<IndexStartupStats> future : futures) {
+            startupStats.add(future.get());
+        }
+        return startupStats;
+    }
+
+    private IndexStartupStats openIndexWithSearcher(Index index, Analyzer analyzer) {
+        long start = System.nanoTime();
+        openIndex(index, analyzer);
+        long writerOpenMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (luceneConfig.isLazyOpenIndexes()) {
+            return new IndexStartupStats(index, writerOpenMillis, 0, 0);
+        }
+        start = System.nanoTime();
+        long warmupMillis;
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            pinned.getHandle().openSearcher();
+            warmupMillis = pinned.getHandle().getLastWarmupMillis();
+        }
+        IndexStartupStats stats = new IndexStartupStats(index, writerOpenMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                warmupMillis);
+        log.info("Opened {}", stats);
+        return stats;
+    }
+
+    @Override
+    public ResultCacheStats getResultCacheStats(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            ResultCache resultCache = pinned.getHandle().getResultCache();
+            if (resultCache == null) {
+                throw new IllegalStateException("Result cache is not enabled for " + index);
+            }
+            return resultCache.getStats();
+        }
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public MaintenanceReport runMaintenance(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            IndexHandle indexHandle = pinned.getHandle();
+            IndexWriter writer = indexHandle.getWriter();
+            int maxSegments = luceneConfig.getIndexConfig(index).getMaintenanceMaxSegments();
+            long start = System.nanoTime();
+            indexHandle.getCommitScheduler().requestCommit().join();
+            SegmentsSummary before = SegmentsSummary.ofLatestCommit(indexHandle.getDirectory());
+            if (maxSegments > 0) {
+                writer.forceMerge(maxSegments);
+            } else {
+                writer.forceMergeDeletes();
+            }
+            indexHandle.getCommitScheduler().requestCommit().join();
+            SegmentsSummary after = SegmentsSummary.ofLatestCommit(indexHandle.getDirectory());
+            MaintenanceReport report = new MaintenanceReport(index, before, after, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.info("Maintenance done: {}", report);
+            metricsListener.maintained(report);
+            return report;
+        }
+    }
+
+    @Override
+    public List<Index> getOpenIndexes() {
+        return indexRegistry.getOpenIndexes();
+    }
+
+    /** Opens writer of registered index, on registration or on first use */
+    @SneakyThrows(IOException.class)
+    private IndexHandle openHandle(Index index, Analyzer analyzer, boolean recreate) {
+        LuceneConfig.IndexConfig indexConfig = luceneConfig.getIndexConfig(index);
+        Directory dir = indexConfig.getDirectoryType().open(indexDirectory(index), indexConfig);
+        IndexWriterConfig iwc = writerConfig(analyzer, indexConfig);
+        if (recreate) {
+            log.info("Opening {} in create mode. Recreated.", index);
+            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        } else if (indexConfig.getDirectoryType() == DirectoryType.BYTE_BUFFERS) {
+            //in memory index exists only if it was loaded from disk
+            log.info("Opening {} in memory, in create or append mode", index);
+            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        } else {
+            log.info("Opening {} in append mode", index);
+            iwc.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+        }
+        return new IndexHandle(index, dir, iwc, analyzer, indexConfig, commitExecutor, replicaExecutor, queryCache,
+                luceneConfig.getQueryCachingPolicy(), metricsListener);
+    }
+
+    /** Writer settings of the index, without open mode */
+    private IndexWriterConfig writerConfig(Analyzer analyzer, LuceneConfig.IndexConfig indexConfig) {
+        IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
+        // for better indexing performance, if you are indexing many documents, increase the RAM buffer. But if you do this,
+        // increase the max heap size to the JVM
+        iwc.setRAMBufferSizeMB(indexConfig.getRamBufferSizeMB());
+        iwc.setMaxBufferedDocs(indexConfig.getMaxBufferedDocs());
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setMaxMergedSegmentMB(indexConfig.getMaxMergedSegmentMB());
+        mergePolicy.setSegmentsPerTier(indexConfig.getSegmentsPerTier());
+        mergePolicy.setFloorSegmentMB(indexConfig.getFloorSegmentMB());
+        mergePolicy.setDeletesPctAllowed(indexConfig.getDeletesPctAllowed());
+        mergePolicy.setForceMergeDeletesPctAllowed(indexConfig.getForceMergeDeletesPctAllowed());
+        iwc.setMergePolicy(mergePolicy);
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        mergeScheduler.setMaxMergesAndThreads(indexConfig.getMaxMergeCount(), indexConfig.getMaxMergeThreads());
+        if (!indexConfig.isMergeIoThrottle()) {
+            mergeScheduler.disableAutoIOThrottle();
+        }
+        iwc.setMergeScheduler(mergeScheduler);
+        if (indexConfig.getSoftDeletesField() != null) {
+            iwc.setSoftDeletesField(indexConfig.getSoftDeletesField());
+        }
+        return iwc;
+    }
+
+    /** Directory of current generation of the index. Alias file, next to index directories, names generation of reindexed index */
+    @SneakyThrows(IOException.class)
+    private Path indexDirectory(Index index) {
+        Path alias = indexPath.resolve(index.getName() + ALIAS_SUFFIX);
+        return indexPath.resolve(Files.exists(alias) ? Files.readString(alias).trim() : index.getName());
+    }
+
+    @Override
+    public <T> BulkIndexResult reindex(Index index, Analyzer analyzer, Stream<T> entities, DocumentConverter<T> documentConverter) {
+        BuiltGeneration generation = buildGeneration(index, analyzer, entities, documentConverter);
+        switchGenerations(List.of(generation));
+        return generation.getResult();
+    }
+
+    /** Builds next generation of the index in sibling directory, without switching to it. Directory of failed build is deleted */
+    @SneakyThrows(IOException.class)
+    <T> BuiltGeneration buildGeneration(Index index, Analyzer analyzer, Stream<T> entities, DocumentConverter<T> documentConverter) {
+        LuceneConfig.IndexConfig indexConfig = luceneConfig.getIndexConfig(index);
+        if (indexConfig.getDirectoryType() == DirectoryType.BYTE_BUFFERS) {
+            throw new IllegalStateException("In memory " + index + " can't be reindexed");
+        }
+        Path current = indexDirectory(index);
+        String currentName = current.getFileName().toString();
+        int separator = currentName.lastIndexOf(GENERATION_SEPARATOR);
+        long generation = separator < 0 ? 1 : Long.parseLong(currentName.substring(separator + GENERATION_SEPARATOR.length())) + 1;
+        Path target = indexPath.resolve(index.getName() + GENERATION_SEPARATOR + generation);
+        //leftover of failed reindex
+        IOUtils.rm(target);
+
+        IndexWriterConfig iwc = writerConfig(analyzer, indexConfig);
+        iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        iwc.setRAMBufferSizeMB(indexConfig.getReindexRamBufferSizeMB());
+        iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+        BulkIndexResult result;
+        long start = startTimer();
+        try (Directory dir = indexConfig.getDirectoryType().open(target, indexConfig);
+             IndexWriter writer = new IndexWriter(dir, iwc)) {
+            result = new BulkIndexer<>(index, writer, documentConverter, bulkExecutor, indexConfig.getBulkIndexThreads(),
+                    indexConfig.getBulkIndexQueueSize()).index(entities);
+            if (indexConfig.getReindexMaxSegments() > 0) {
+                writer.forceMerge(indexConfig.getReindexMaxSegments());
+            }
+            writer.commit();
+        } catch (RuntimeException | IOException e) {
+            deleteGeneration(index, target);
+            throw e;
+        }
+        metricsListener.indexed(index, Math.toIntExact(result.getDocuments()), elapsed(start));
+        return new BuiltGeneration(index, analyzer, current, target, result);
+    }
+
+    /**
+     * Switches indexes to their built generations together: alias files first, then handles. Rename of alias is atomic, so reopened index
+     * sees either old or new generation. Old generations are deleted when their searches finish
+     */
+    @SneakyThrows(IOException.class)
+    void switchGenerations(List<BuiltGeneration> generations) {
+        for (BuiltGeneration generation : generations) {
+            Path alias = indexPath.resolve(generation.getIndex().getName() + ALIAS_SUFFIX);
+            Path newAlias = indexPath.resolve(generation.getDirectory().getFileName() + ALIAS_SUFFIX);
+            Files.writeString(newAlias, generation.getDirectory().getFileName().toString());
+            Files.move(newAlias, alias, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (BuiltGeneration generation : generations) {
+            Index index = generation.getIndex();
+            indexRegistry.swap(index, generation.getAnalyzer(), () -> deleteGeneration(index, generation.getPrevious()));
+            log.info("Reindexed {} into {}: {}", index, generation.getDirectory().getFileName(), generation.getResult());
+        }
+    }
+
+    /** Deletes built generation, which won't be switched to */
+    void discardGeneration(BuiltGeneration generation) {
+        deleteGeneration(generation.getIndex(), generation.getDirectory());
+    }
+
+    private void deleteGeneration(Index index, Path directory) {
+        try {
+            IOUtils.rm(directory);
+        } catch (IOException e) {
+            log.warn("Can't delete old generation {} of {}", directory, index, e);
+        }
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public long indexDocument(Index index, Document document, boolean commit) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            IndexHandle indexHandle = pinned.getHandle();
+            long start = startTimer();
+            long generation = indexHandle.getWriter().addDocument(document);
+            metricsListener.indexed(index, 1, elapsed(start));
+            commitOrSchedule(indexHandle, 1, commit);
+            return generation;
+        }
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public long indexDocuments(Index index, List<Document> documents, boolean commit) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            IndexHandle indexHandle = pinned.getHandle();
+            IndexWriter indexWriter = indexHandle.getWriter();
+            long generation = -1;
+            long start = startTimer();
+            for (Document doc : documents) {
+                generation = indexWriter.addDocument(doc);
+            }
+            metricsListener.indexed(index, documents.size(), elapsed(start));
+            commitOrSchedule(indexHandle, documents.size(), commit);
+            return generation;
+        }
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public <T> long upsert(Index index, String idField, List<T> entities, DocumentConverter<T> documentConverter, boolean commit) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (T entity : entities) {
+            Document document = documentConverter.getDocument(entity);
+            String id = document.get(idField);
+            if (id == null) {
+                throw new IllegalStateException("Document without " + idField + " can't be upserted to " + index);
+            }
+            //the last write of the batch wins, earlier ones are never indexed
+            documents.put(id, document);
+        }
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            IndexHandle indexHandle = pinned.getHandle();
+            IndexWriter indexWriter = indexHandle.getWriter();
+            String softDeletesField = luceneConfig.getIndexConfig(index).getSoftDeletesField();
+            long generation = -1;
+            long start = startTimer();
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                Term idTerm = new Term(idField, entry.getKey());
+                generation = softDeletesField == null ? indexWriter.updateDocument(idTerm, entry.getValue()) :
+                        indexWriter.softUpdateDocument(idTerm, entry.getValue(), new NumericDocValuesField(softDeletesField, 1));
+            }
+            metricsListener.indexed(index, documents.size(), elapsed(start));
+            commitOrSchedule(indexHandle, documents.size(), commit);
+            return generation;
+        }
+    }
+
+    /**
+     * Explicit commit waits for group commit which starts after the change, and it is shared with concurrent writers. Otherwise commit
+     * policy of the index decides when changes are committed.
+     */
+    private void commitOrSchedule(IndexHandle indexHandle, int addedDocuments, boolean commit) {
+        if (commit) {
+            indexHandle.getCommitScheduler().requestCommit().join();
+        } else {
+            indexHandle.getCommitScheduler().documentsAdded(addedDocuments);
+        }
+    }
+
+    @Override
+    public long commit(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().getCommitScheduler().requestCommit().join();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Long> whenDurable(Index index, long generation) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().getCommitScheduler().whenDurable(generation);
+        }
+    }
+
+    @Override
+    public <T> BulkIndexResult bulkIndex(Index index, Stream<T> entities, DocumentConverter<T> documentConverter, boolean commit) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            IndexHandle indexHandle = pinned.getHandle();
+            LuceneConfig.IndexConfig indexConfig = luceneConfig.getIndexConfig(index);
+            BulkIndexer<T> bulkIndexer = new BulkIndexer<>(index, indexHandle.getWriter(), documentConverter, bulkExecutor,
+                    indexConfig.getBulkIndexThreads(), indexConfig.getBulkIndexQueueSize());
+            long start = startTimer();
+            BulkIndexResult result = bulkIndexer.index(entities);
+            metricsListener.indexed(index, Math.toIntExact(result.getDocuments()), elapsed(start));
+            commitOrSchedule(indexHandle, Math.toIntExact(result.getDocuments()), commit);
+            log.info("Bulk indexed {}: {}", index, result);
+            return result;
+        }
+    }
+
+    @Override
+    public void refreshSearcher(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            pinned.getHandle().openSearcher();
+        }
+    }
+
+    @Override
+    @SneakyThrows(InterruptedException.class)
+    public void waitForGeneration(Index index, long generation) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            pinned.getHandle().waitForGeneration(generation);
+        }
+    }
+
+    @Override
+    public SearcherLease acquireSearcher(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().acquireSearcher();
+        }
+    }
+
+    @Override
+    public BackupResult backup(Index index, Path destination) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            BackupResult result = pinned.getHandle().backup(destination);
+            log.info("Backed up {} to {}: {}", index, destination, result);
+            return result;
+        }
+    }
+
+    @Override
+    public SearcherLease acquireReplicaSearcher(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().acquireReplicaSearcher();
+        }
+    }
+
+    @Override
+    public BackupResult syncReplica(Index index) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().syncReplica();
+        }
+    }
+
+    @Override
+    public List<Document> search(Index index, Query query) {
+        return search(index, query, false);
+    }
+
+    @Override
+    public List<Document> search(Index index, Query query, boolean refreshSearcher) {
+        if (refreshSearcher) {
+            refreshSearcher(index);
+        }
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            List<Document> documents = cached(pinned.getHandle(), lease, () -> searchDocuments(lease.getSearcher(), query), "search",
+                    query);
+            metricsListener.searched(index, "search", documents.size(), elapsed(start));
+            return documents;
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private List<Document> searchDocuments(IndexSearcher searcher, Query query) {
+        TopDocs topDocs = searcher.search(query, luceneConfig.getMaxSearchSize());
+        ScoreDoc[] hits = topDocs.scoreDocs;
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < hits.length; i++) {
+            docs.add(searcher.doc(hits[i].doc));
+        }
+        return docs;
+    }
+
+    @Override
+    public int count(Index index, Query query) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            int count = cached(pinned.getHandle(), lease, () -> count(lease.getSearcher(), query), "count", query);
+            metricsListener.searched(index, "count", count, elapsed(start));
+            return count;
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private int count(IndexSearcher searcher, Query query) {
+        return searcher.count(query);
+    }
+
+    @Override
+    public boolean exists(Index index, Query query) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            boolean exists = cached(pinned.getHandle(), lease, () -> exists(lease.getSearcher(), query), "exists", query);
+            metricsListener.searched(index, "exists", exists ? 1 : 0, elapsed(start));
+            return exists;
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private boolean exists(IndexSearcher searcher, Query query) {
+        ExistsCollector collector = new ExistsCollector();
+        searcher.search(query, collector);
+        return collector.found;
+    }
+
+    @Override
+    public SearchPage searchPage(Index index, Query query, SearchOptions options) {
+        return searchPage(index, query, options, null);
+    }
+
+    @Override
+    public SearchPage searchPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            SearchPage page = cached(pinned.getHandle(), lease, () -> searchPage(index, lease.getSearcher(), query, options, after),
+                    "searchPage", query, options, afterKey(after));
+            metricsListener.searched(index, "searchPage", page.getTotalHits(), elapsed(start));
+            return page;
+        }
+    }
+
+    @Override
+    public SearchPage searchPage(Collection<Index> indexes, Query query, SearchOptions options) {
+        return searchPage(new ArrayList<>(indexes), query, options, null);
+    }
+
+    /**
+     * Each index is searched in its own task, with statistics of all indexes, so scores are comparable. Cursor of the merged page
+     * identifies its index by shardIndex, other indexes resume from the same score or sort values.
+     */
+    @Override
+    public SearchPage searchPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after) {
+        return federatedPage(indexes, query, options, after, "searchPage",
+                (index, analyzer, searcher, scoreDocs, searchNanos) -> loadHits(index, searcher, scoreDocs, options));
+    }
+
+    private SearchPage federatedPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after, String operation,
+                                     FederatedLoader<LuceneSearchHit> loader) {
+        FederatedHits<LuceneSearchHit> federated = federated(indexes, query, options, after, operation, loader);
+        ScoreDoc[] scoreDocs = federated.merged.scoreDocs;
+        ScoreDoc nextAfter = scoreDocs.length == options.getPageSize() ? scoreDocs[scoreDocs.length - 1] : null;
+        TotalHits totalHits = federated.merged.totalHits;
+        return new SearchPage(federated.hits, totalHits.value, totalHits.relation == TotalHits.Relation.EQUAL_TO, nextAfter);
+    }
+
+    /** Searches indexes in parallel with statistics of all of them, merges their top docs, and loads hits of each index in parallel */
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    private <R> FederatedHits<R> federated(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after, String operation,
+                                           FederatedLoader<R> loader) {
+        List<SearcherLease> leases = new ArrayList<>();
+        List<Analyzer> analyzers = new ArrayList<>();
+        long start = startTimer();
+        try {
+            for (Index index : indexes) {
+                try (PinnedHandle pinned = indexRegistry.pin(index)) {
+                    leases.add(pinned.getHandle().acquireSearcher());
+                    analyzers.add(pinned.getHandle().getAnalyzer());
+                }
+            }
+            List<IndexReader> readers = leases.stream().map(SearcherLease::getReader).collect(Collectors.toList());
+            List<IndexSearcher> searchers = leases.stream().map(lease -> GlobalStatsSearcher.of(lease.getSearcher(), readers))
+                    .collect(Collectors.toList());
+            List<Future<TopDocs>> futures = new ArrayList<>();
+            for (int i = 0; i < searchers.size(); i++) {
+                IndexSearcher searcher = searchers.get(i);
+                ScoreDoc indexAfter = after == null ? null : federatedAfter(after, i, searcher.getIndexReader().maxDoc());
+                futures.add(searchExecutor.submit(() -> searchTopDocs(searcher, query, options, indexAfter)));
+            }
+            TopDocs[] topDocs = options.getSort() == null ? new TopDocs[futures.size()] : new TopFieldDocs[futures.size()];
+            for (int i = 0; i < futures.size(); i++) {
+                topDocs[i] = futures.get(i).get();
+            }
+            TopDocs merged = options.getSort() == null ? TopDocs.merge(options.getPageSize(), topDocs) :
+                    TopDocs.merge(options.getSort(), options.getPageSize(), (TopFieldDocs[]) topDocs);
+            long searchNanos = elapsed(start);
+
+            List<Future<List<R>>> hitFutures = new ArrayList<>();
+            for (int i = 0; i < searchers.size(); i++) {
+                int shardIndex = i;
+                ScoreDoc[] indexScoreDocs = Stream.of(merged.scoreDocs).filter(sd -> sd.shardIndex == shardIndex).toArray(ScoreDoc[]::new);
+                Index index = indexes.get(i);
+                Analyzer analyzer = analyzers.get(i);
+                IndexSearcher searcher = searchers.get(i);
+                hitFutures.add(searchExecutor.submit(() -> loader.load(index, analyzer, searcher, indexScoreDocs, searchNanos)));
+            }
+            List<Iterator<R>> indexHits = new ArrayList<>();
+            for (Future<List<R>> hitFuture : hitFutures) {
+                indexHits.add(hitFuture.get().iterator());
+            }
+            List<R> hits = new ArrayList<>(merged.scoreDocs.length);
+            for (ScoreDoc scoreDoc : merged.scoreDocs) {
+                hits.add(indexHits.get(scoreDoc.shardIndex).next());
+            }
+            long nanos = elapsed(start);
+            for (int i = 0; i < indexes.size(); i++) {
+                metricsListener.searched(indexes.get(i), operation, topDocs[i].totalHits.value, nanos);
+            }
+            return new FederatedHits<>(merged, hits);
+        } finally {
+            leases.forEach(SearcherLease::close);
+        }
+    }
+
+    @Override
+    public FacetResult facets(Index index, Query query, FacetRequest request) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            FacetResult result = cached(pinned.getHandle(), lease, () -> collectFacets(lease.getSearcher(), query, request).toResult(),
+                    "facets", query, request);
+            metricsListener.searched(index, "facets", result.getTotalHits(), elapsed(start));
+            return result;
+        }
+    }
+
+    /** Each index is collected in its own task, then counts of all indexes are merged */
+    @Override
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    public FacetResult facets(Collection<Index> indexes, Query query, FacetRequest request) {
+        List<SearcherLease> leases = new ArrayList<>();
+        long start = startTimer();
+        try {
+            for (Index index : indexes) {
+                leases.add(acquireSearcher(index));
+            }
+            List<Future<FacetCollector>> futures = new ArrayList<>();
+            for (SearcherLease lease : leases) {
+                futures.add(searchExecutor.submit(() -> collectFacets(lease.getSearcher(), query, request)));
+            }
+            FacetCollector merged = new FacetCollector(request);
+            for (Future<FacetCollector> future : futures) {
+                merged.merge(future.get());
+            }
+            FacetResult result = merged.toResult();
+            long nanos = elapsed(start);
+            indexes.forEach(index -> metricsListener.searched(index, "facets", result.getTotalHits(), nanos));
+            return result;
+        } finally {
+            leases.forEach(SearcherLease::close);
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private FacetCollector collectFacets(IndexSearcher searcher, Query query, FacetRequest request) {
+        return searcher.search(query, FacetCollector.manager(request));
+    }
+
+    @Override
+    public Stream<LuceneSearchHit> searchStream(Index index, Query query, SearchOptions options) {
+        SearcherLease lease = acquireSearcher(index);
+        SearchHitIterator iterator = new SearchHitIterator(index, lease, query, options);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(lease::close);
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public void deleteDocuments(Index index, Query query) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            long start = startTimer();
+            pinned.getHandle().getWriter().deleteDocuments(query);
+            metricsListener.deleted(index, elapsed(start));
+        }
+    }
+
+    @Override
+    public List<LuceneHighlightResult<Document>> getHighlights(Index index, Query query) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            List<LuceneHighlightResult<Document>> highlights = cached(pinned.getHandle(), lease,
+                    () -> highlight(index, pinned.getHandle().getAnalyzer(), lease.getSearcher(), query), "getHighlights", query);
+            metricsListener.searched(index, "getHighlights", highlights.size(), elapsed(start));
+            return highlights;
+        }
+    }
+
+    /** Top hits of all indexes up to max search size, scored with statistics of all indexes and merged by score */
+    @Override
+    public List<LuceneHighlightResult<Document>> getHighlights(Collection<Index> indexes, Query query) {
+        return federated(new ArrayList<>(indexes), query, maxSearchSizeOptions(), null, "getHighlights",
+                (index, analyzer, searcher, scoreDocs, searchNanos) -> highlight(index, analyzer, searcher, query, scoreDocs, searchNanos))
+                .hits;
+    }
+
+    @SneakyThrows(IOException.class)
+    private List<LuceneHighlightResult<Document>> highlight(Index index, Analyzer analyzer, IndexSearcher searcher, Query query) {
+        long start = startTimer();
+        TopDocs topDocs = searcher.search(query, luceneConfig.getMaxSearchSize());
+        return highlight(index, analyzer, searcher, query, topDocs.scoreDocs, elapsed(start));
+    }
+
+    @SneakyThrows(IOException.class)
+    private List<LuceneHighlightResult<Document>> highlight(Index index, Analyzer analyzer, IndexSearcher searcher, Query query,
+                                                            ScoreDoc[] scoreDocs, long searchNanos) {
+        List<LuceneHighlightResult<Document>> highlightResults = new ArrayList<>();
+        String field = luceneConfig.getHighlightsConfig().getFields().get(0);
+        long start = startTimer();
+        long loadNanos = 0;
+        Formatter formatter = new SimpleHTMLFormatter("<em>", "</em>");
+        //It scores text fragments by the number of unique query terms found
+        //Basically the matching score in layman terms
+        QueryScorer scorer = new QueryScorer(query);
+        //used to markup highlighted terms found in the best sections of a text
+        Highlighter highlighter = new Highlighter(formatter, scorer);
+        //It breaks text up into same-size texts but does not split up spans
+        Fragmenter fragmenter = new SimpleSpanFragmenter(scorer, luceneConfig.getHighlightsConfig().getFragmentSizeChars());
+        highlighter.setTextFragmenter(fragmenter);
+        for (int i = 0; i < scoreDocs.length; i++) {
+            int docid = scoreDocs[i].doc;
+            long loadStart = startTimer();
+            Document doc = searcher.doc(docid);
+            loadNanos += elapsed(loadStart);
+            String text = doc.get(field);
+            TokenStream stream = TokenSources.getAnyTokenStream(searcher.getIndexReader(), docid, field, analyzer);
+            try {
+                TextFragment[] bestTextFragments = highlighter.getBestTextFragments(stream, text, false, luceneConfig.getHighlightsConfig()
+                        .getNumberOfDocumentFragments());
+                List<String> fragmentsList = Stream.of(bestTextFragments).map(TextFragment::toString).collect(Collectors.toList());
+                highlightResults.add(new LuceneHighlightResult(doc, fragmentsList));
+            } catch (InvalidTokenOffsetsException e) {
+                throw new RuntimeException("Error getting highlighted fragments", e);
+            }
+        }
+        metricsListener.highlighted(index, highlightResults.size(), searchNanos, loadNanos, elapsed(start) - loadNanos);
+        return highlightResults;
+    }
+
+    @Override
+    public SearchPage highlightPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            SearchPage page = cached(pinned.getHandle(), lease,
+                    () -> highlightPage(index, pinned.getHandle().getAnalyzer(), lease.getSearcher(), query, options, after),
+                    "highlightPage", query, options, afterKey(after));
+            metricsListener.searched(index, "highlightPage", page.getTotalHits(), elapsed(start));
+            return page;
+        }
+    }
+
+    /** Pages of all indexes merged like in federated searchPage, scored with statistics of all indexes, and highlighted */
+    @Override
+    public SearchPage highlightPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after) {
+        return federatedPage(indexes, query, options, after, "highlightPage", (index, analyzer, searcher, scoreDocs, searchNanos) ->
+                highlightHits(index, analyzer, searcher, query, scoreDocs, options, searchNanos));
+    }
+
+    private SearchPage highlightPage(Index index, Analyzer analyzer, IndexSearcher searcher, Query query, SearchOptions options,
+                                     ScoreDoc after) {
+        long start = startTimer();
+        TopDocs topDocs = searchTopDocs(searcher, query, options, after);
+        return searchPage(topDocs, highlightHits(index, analyzer, searcher, query, topDocs.scoreDocs, options, elapsed(start)), options);
+    }
+
+    private List<LuceneSearchHit> highlightHits(Index index, Analyzer analyzer, IndexSearcher searcher, Query query, ScoreDoc[] scoreDocs,
+                                                SearchOptions options, long searchNanos) {
+        LuceneConfig.HighlightsConfig highlightsConfig = luceneConfig.getHighlightsConfig();
+        long start = startTimer();
+        List<LuceneSearchHit> hits = loadHits(index, searcher, scoreDocs, options);
+        long loaded = startTimer();
+        int[] docIds = hits.stream().mapToInt(LuceneSearchHit::getDocId).toArray();
+        OffsetsHighlighter highlighter = new OffsetsHighlighter(searcher, analyzer, highlightsConfig,
+                highlightsConfig.isParallel() ? searchExecutor : null);
+        List<Map<String, List<String>>> highlights = highlighter.highlight(query, docIds);
+        for (int i = 0; i < docIds.length; i++) {
+            hits.get(i).setHighlights(highlights.get(i));
+        }
+        metricsListener.highlighted(index, docIds.length, searchNanos, loaded - start, elapsed(loaded));
+        return hits;
+    }
+
+    /**
+     * Full implementation of highlights without Lucene Highlighter and Fragmenter - which haven't produced satisfying results. Implemented
+     * with TokenStream, source text, and custom made sentence aware highlighter and fragmenter.
+     *
+     * @param query                  used to search for documents
+     * @param highlightTermPredicate used to determine term to highlight. Another form of query, to return boolean
+     */
+    @Override
+    @SneakyThrows(IOException.class)
+    public List<LuceneHighlightResult<Document>> getCustomHighlights(Index index, Query query, Predicate<String> highlightTermPredicate) {
+        long start = startTimer();
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            IndexSearcher searcher = lease.getSearcher();
+            TopDocs topDocs = searcher.search(query, luceneConfig.getMaxSearchSize());
+            List<LuceneHighlightResult<Document>> highlightResults = customHighlights(index, searcher, topDocs.scoreDocs,
+                    highlightTermPredicate, elapsed(start));
+            metricsListener.searched(index, "getCustomHighlights", highlightResults.size(), elapsed(start));
+            return highlightResults;
+        }
+    }
+
+    /** Top hits of all indexes up to max search size, scored with statistics of all indexes and merged by score */
+    @Override
+    public List<LuceneHighlightResult<Document>> getCustomHighlights(Collection<Index> indexes, Query query,
+                                                                     Predicate<String> highlightTermPredicate) {
+        return federated(new ArrayList<>(indexes), query, maxSearchSizeOptions(), null, "getCustomHighlights",
+                (index, analyzer, searcher, scoreDocs, searchNanos) -> customHighlights(index, searcher, scoreDocs, highlightTermPredicate,
+                        searchNanos)).hits;
+    }
+
+    @SneakyThrows(IOException.class)
+    private List<LuceneHighlightResult<Document>> customHighlights(Index index, IndexSearcher searcher, ScoreDoc[] scoreDocs,
+                                                                   Predicate<String> highlightTermPredicate, long searchNanos) {
+        List<LuceneHighlightResult<Document>> highlightResults = new ArrayList<>();
+        SentenceFragmenter sentenceFragmenter = new SentenceFragmenter(luceneConfig.getHighlightsConfig());
+        String field = luceneConfig.getHighlightsConfig().getFields().get(0);
+        long start = startTimer();
+        long loadNanos = 0;
+        int[] startOffsets = new int[16];
+        int[] endOffsets = new int[16];
+
+        for (int i = 0; i < scoreDocs.length; i++) {
+            int docId = scoreDocs[i].doc;
+            long loadStart = startTimer();
+            Document doc = searcher.doc(docId);
+            loadNanos += elapsed(loadStart);
+            String text = doc.get(field);
+            Fields termVectors = searcher.getIndexReader().getTermVectors(docId);
+            TokenStream stream = TokenSources.getTermVectorTokenStreamOrNull(field, termVectors, -1);
+            CharTermAttribute charTermAttribute = stream.addAttribute(CharTermAttribute.class);
+            OffsetAttribute offsetAttribute = stream.addAttribute(OffsetAttribute.class);
+
+            stream.reset();
+            int termCount = 0;
+            while (stream.incrementToken()) {
+                if (highlightTermPredicate.test(charTermAttribute.toString())) {
+                    if (termCount == startOffsets.length) {
+                        startOffsets = ArrayUtil.grow(startOffsets, termCount + 1);
+                        endOffsets = ArrayUtil.grow(endOffsets, termCount + 1);
+                    }
+                    startOffsets[termCount] = offsetAttribute.startOffset();
+                    endOffsets[termCount] = offsetAttribute.endOffset();
+                    termCount++;
+                }
+            }
+            //terms in the same sentence window are highlighted in one fragment
+            List<String> fragmentsList = sentenceFragmenter.getSentenceFragments(text, startOffsets, endOffsets, termCount,
+                luceneConfig.getHighlightsConfig().getNumberOfDocumentFragments());
+            highlightResults.add(new LuceneHighlightResult<Document>(doc, fragmentsList));
+        }
+        metricsListener.highlighted(index, highlightResults.size(), searchNanos, loadNanos, elapsed(start) - loadNanos);
+        return highlightResults;
+    }
+
+    /** Top hits up to max search size, like getHighlights of one index */
+    private SearchOptions maxSearchSizeOptions() {
+        return SearchOptions.searchOptionsBuilder().pageSize(luceneConfig.getMaxSearchSize()).build();
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public Optional<Document> getDocumentById(Index index, String idField, String idValue) {
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            IndexHandle indexHandle = pinned.getHandle();
+            int docId = indexHandle.idLookup(lease, idField).lookup(new BytesRef(idValue));
+            return docId == IdLookup.NOT_FOUND ? Optional.empty() : Optional.of(lease.getSearcher().doc(docId));
+        }
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    public List<Document> getDocumentsByIds(Index index, String idField, List<String> idValues) {
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            IndexHandle indexHandle = pinned.getHandle();
+            BytesRef[] ids = idValues.stream().map(BytesRef::new).toArray(BytesRef[]::new);
+            int[] docIds = indexHandle.idLookup(lease, idField).lookup(ids);
+            List<Document> documents = new ArrayList<>(docIds.length);
+            for (int docId : docIds) {
+                documents.add(docId == IdLookup.NOT_FOUND ? null : lease.getSearcher().doc(docId));
+            }
+            return documents;
+        }
+    }
+
+    @Override
+    public int getDocumentNumber(Index index, SearcherLease lease, String idField, String idValue) {
+        try (PinnedHandle pinned = indexRegistry.pin(index)) {
+            return pinned.getHandle().idLookup(lease, idField).lookup(new BytesRef(idValue));
+        }
+    }
+
+    /**
+     * Returns data for each term in one document from one field
+     *
+     * @param index     document's index
+     * @param idField   for a document, with unique values
+     * @param idValue   of a document
+     * @param termField from where to take terms
+     */
+    @Override
+    public List<TermVectorData> getDocumentTerms(Index index, String idField, String idValue, String termField, boolean includeOffsets) {
+        DocumentTermsData documentTerms = getDocumentsTerms(index, idField, List.of(idValue), termField, includeOffsets).get(0);
+        if (documentTerms == null) {
+            return new ArrayList<>();
+        }
+        return documentTerms.toTermVectorData();
+    }
+
+    @Override
+    public List<DocumentTermsData> getDocumentsTerms(Index index, String idField, List<String> idValues, String termField,
+                                                     boolean includeOffsets) {
+        try (PinnedHandle pinned = indexRegistry.pin(index); SearcherLease lease = pinned.getHandle().acquireSearcher()) {
+            IndexHandle indexHandle = pinned.getHandle();
+            BytesRef[] ids = idValues.stream().map(BytesRef::new).toArray(BytesRef[]::new);
+            int[] docIds = indexHandle.idLookup(lease, idField).lookup(ids);
+            List<DocumentTermsData> documentsTerms = new DocumentTermsLoader(lease.getReader(), indexHandle.getTermStatsCache(), termField,
+                includeOffsets).load(idValues, docIds);
+            for (int i = 0; i < docIds.length; i++) {
+                if (docIds[i] != IdLookup.NOT_FOUND && documentsTerms.get(i) == null) {
+                    log.warn("No termVector found for {}, idField: {}, idValue: {}, termField: {}", index, idField, idValues.get(i),
+                        termField);
+                }
+            }
+            return documentsTerms;
+        }
+    }
+
+    /**
+     * Result from result cache of the index, or result of the search when cache is disabled or doesn't have it. Key contains leased
+     * reader, so results of different readers are never mixed
+     */
+    private <R> R cached(IndexHandle indexHandle, SearcherLease lease, Supplier<R> search, Object... operationAndParameters) {
+        ResultCache resultCache = indexHandle.getResultCache();
+        if (resultCache == null) {
+            return search.get();
+        }
+        List<Object> key = new ArrayList<>(operationAndParameters.length + 1);
+        key.add(lease.getReader());
+        key.addAll(Arrays.asList(operationAndParameters));
+        return resultCache.get(key, search);
+    }
+
+    /** ScoreDoc doesn't implement equals */
+    private static List<Object> afterKey(ScoreDoc after) {
+        if (after == null) {
+            return null;
+        }
+        Object[] fields = after instanceof FieldDoc ? ((FieldDoc) after).fields : null;
+        return Arrays.asList(after.doc, after.score, after.shardIndex, fields == null ? null : Arrays.asList(fields));
+    }
+
+    /** Loads one page of hits, with only requested stored fields and DocValues */
+    private SearchPage searchPage(Index index, IndexSearcher searcher, Query query, SearchOptions options, ScoreDoc after) {
+        TopDocs topDocs = searchTopDocs(searcher, query, options, after);
+        return searchPage(topDocs, loadHits(index, searcher, topDocs.scoreDocs, options), options);
+    }
+
+    private SearchPage searchPage(TopDocs topDocs, List<LuceneSearchHit> hits, SearchOptions options) {
+        ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        ScoreDoc nextAfter = scoreDocs.length == options.getPageSize() ? scoreDocs[scoreDocs.length - 1] : null;
+        return new SearchPage(hits, topDocs.totalHits.value, topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO, nextAfter);
+    }
+
+    /** Top hits of the page, total hits are counted up to threshold of options. Hits sorted by fields are not scored */
+    @SneakyThrows(IOException.class)
+    private TopDocs searchTopDocs(IndexSearcher searcher, Query query, SearchOptions options, ScoreDoc after) {
+        int numHits = Math.max(1, Math.min(options.getPageSize(), searcher.getIndexReader().maxDoc()));
+        int threshold = options.getTotalHitsThreshold();
+        if (options.getSort() == null) {
+            return searcher.search(query, new TopScoreDocCollectorManager(numHits, after, threshold));
+        }
+        if (after != null && !(after instanceof FieldDoc)) {
+            throw new IllegalArgumentException("after must be a FieldDoc; got " + after);
+        }
+        return searcher.search(query, TopFieldCollector.createSharedManager(options.getSort(), numHits, (FieldDoc) after, threshold));
+    }
+
+    /**
+     * Relevance top hits of each slice, merged. Lucene's shared manager accepts only FieldDoc cursor. Ties are ordered by doc id like
+     * the after cursor skips them, not by slice
+     */
+    private static class TopScoreDocCollectorManager implements CollectorManager<TopScoreDocCollector, TopDocs> {
+        private static final Comparator<ScoreDoc> HITS_ORDER =
+                Comparator.comparingDouble((ScoreDoc scoreDoc) -> scoreDoc.score).reversed().thenComparingInt(scoreDoc -> scoreDoc.doc);
+
+        private final int numHits;
+        private final ScoreDoc after;
+        private final int totalHitsThreshold;
+
+        TopScoreDocCollectorManager(int numHits, ScoreDoc after, int totalHitsThreshold) {
+            this.numHits = numHits;
+            this.after = after;
+            this.totalHitsThreshold = totalHitsThreshold;
+        }
+
+        @Override
+        public TopScoreDocCollector newCollector() {
+            return TopScoreDocCollector.create(numHits, after, totalHitsThreshold);
+        }
+
+        @Override
+        public TopDocs reduce(Collection<TopScoreDocCollector> collectors) {
+            long totalHits = 0;
+            TotalHits.Relation relation = TotalHits.Relation.EQUAL_TO;
+            List<ScoreDoc> scoreDocs = new ArrayList<>();
+            for (TopScoreDocCollector collector : collectors) {
+                TopDocs topDocs = collector.topDocs();
+                totalHits += topDocs.totalHits.value;
+                if (topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO) {
+                    relation = TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO;
+                }
+                scoreDocs.addAll(Arrays.asList(topDocs.scoreDocs));
+            }
+            scoreDocs.sort(HITS_ORDER);
+            List<ScoreDoc> page = scoreDocs.subList(0, Math.min(numHits, scoreDocs.size()));
+            return new TopDocs(new TotalHits(totalHits, relation), page.toArray(new ScoreDoc[0]));
+        }
+    }
+
+    /** Generation of reindexed index, built but not switched to yet */
+    @Getter
+    @AllArgsConstructor
+    static class BuiltGeneration {
+        private final Index index;
+        private final Analyzer analyzer;
+        /** Directory of the current generation */
+        private final Path previous;
+        private final Path directory;
+        private final BulkIndexResult result;
+    }
+
+    /** Loads results of hits of one index of federated search, in order of the hits */
+    private interface FederatedLoader<R> {
+        List<R> load(Index index, Analyzer analyzer, IndexSearcher searcher, ScoreDoc[] scoreDocs, long searchNanos);
+    }
+
+    /** Merged top docs of federated search, and results of their hits in the same order */
+    private static class FederatedHits<R> {
+        private final TopDocs merged;
+        private final List<R> hits;
+
+        FederatedHits(TopDocs merged, List<R> hits) {
+            this.merged = merged;
+            this.hits = hits;
+        }
+    }
+
+    /** Non scoring collector which terminates collection at the first match */
+    private static class ExistsCollector extends SimpleCollector {
+        private boolean found;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) {
+            if (found) {
+                throw new CollectionTerminatedException();
+            }
+        }
+
+        @Override
+        public void collect(int doc) {
+            found = true;
+            throw new CollectionTerminatedException();
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private List<LuceneSearchHit> loadHits(Index index, IndexSearcher searcher, ScoreDoc[] scoreDocs, SearchOptions options) {
+        List<Map<String, Object>> docValues = new DocValuesLoader(searcher.getIndexReader(), options.getDocValueFields()).load(scoreDocs);
+        List<LuceneSearchHit> hits = new ArrayList<>(scoreDocs.length);
+        for (int i = 0; i < scoreDocs.length; i++) {
+            ScoreDoc scoreDoc = scoreDocs[i];
+            Object[] sortValues = scoreDoc instanceof FieldDoc ? ((FieldDoc) scoreDoc).fields : null;
+            Document document = null;
+            if (options.loadsDocument()) {
+                document = options.getStoredFields() == null ? searcher.doc(scoreDoc.doc) : searcher.doc(scoreDoc.doc, options.getStoredFields());
+            }
+            hits.add(new LuceneSearchHit(index, scoreDoc.doc, scoreDoc.score, sortValues, document, docValues.get(i), null));
+        }
+        return hits;
+    }
+
+    /**
+     * Cursor for one index of federated search. Merged hits with equal score or sort values are ordered by index position, so index
+     * before cursor's index excludes equal hits, and index after it includes them all.
+     */
+    private ScoreDoc federatedAfter(ScoreDoc after, int shardIndex, int maxDoc) {
+        int doc = shardIndex == after.shardIndex ? after.doc : shardIndex < after.shardIndex ? maxDoc - 1 : -1;
+        if (after instanceof FieldDoc) {
+            return new FieldDoc(doc, after.score, ((FieldDoc) after).fields);
+        }
+        return new ScoreDoc(doc, after.score);
+    }
+
+    /** Fetches pages lazily, all from the same leased searcher. Lease is closed when iterator is exhausted or stream is closed */
+    private class SearchHitIterator implements Iterator<LuceneSearchHit> {
+        private final Index index;
+        private final SearcherLease lease;
+        private final Query query;
+        private final SearchOptions options;
+        private Iterator<LuceneSearchHit> pageHits = Collections.emptyIterator();
+        private ScoreDoc after;
+        private boolean lastPage;
+
+        SearchHitIterator(Index index, SearcherLease lease, Query query, SearchOptions options) {
+            this.index = index;
+            this.lease = lease;
+            this.query = query;
+            this.options = options;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!pageHits.hasNext() && !lastPage) {
+                SearchPage page = searchPage(index, lease.getSearcher(), query, options, after);
+                pageHits = page.getHits().iterator();
+                after = page.getAfter();
+                lastPage = !page.hasNextPage();
+                if (lastPage) {
+                    lease.close();
+                }
+            }
+            return pageHits.hasNext();
+        }
+
+        @Override
+        public LuceneSearchHit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pageHits.next();
+        }
+    }
+
+    /** Start of measured operation, 0 with no-op metrics listener */
+    private long startTimer() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    private long elapsed(long start) {
+        return timed ? System.nanoTime() - start : 0;
+    }
+
+    static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
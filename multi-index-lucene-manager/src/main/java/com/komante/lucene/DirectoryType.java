@@ -0,0 +1,69 @@
+package com.komante.lucene;
+
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** How an index does I/O. Chosen per index in {@link LuceneConfig.IndexConfig} */
+public enum DirectoryType {
+    /** Best implementation for the platform, picked by {@link FSDirectory#open}. MMap on 64 bit JVMs */
+    FS_DEFAULT {
+        @Override
+        Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException {
+            return FSDirectory.open(path);
+        }
+    },
+    /** Memory mapped files. Fast reads of large read-mostly indexes, using OS page cache instead of heap */
+    MMAP {
+        @Override
+        Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException {
+            return new MMapDirectory(path);
+        }
+    },
+    /** Positional reads through FileChannel. No address space used, but each read is a system call */
+    NIOFS {
+        @Override
+        Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    },
+    /**
+     * Default file system directory, with small newly flushed segments kept in heap. For write heavy NRT indexes, which refresh often.
+     * Limits are nrtCachingMaxMergeSizeMB and nrtCachingMaxCachedMB
+     */
+    NRT_CACHING {
+        @Override
+        Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException {
+            return new NRTCachingDirectory(FSDirectory.open(path), indexConfig.getNrtCachingMaxMergeSizeMB(),
+                indexConfig.getNrtCachingMaxCachedMB());
+        }
+    },
+    /**
+     * Whole index in heap, lost when index is closed. For small hot indexes. With loadFromDisk, starts with a copy of index files
+     * from index directory
+     */
+    BYTE_BUFFERS {
+        @Override
+        Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException {
+            ByteBuffersDirectory directory = new ByteBuffersDirectory();
+            if (indexConfig.isLoadFromDisk() && Files.isDirectory(path)) {
+                try (Directory source = FSDirectory.open(path)) {
+                    for (String file : source.listAll()) {
+                        directory.copyFrom(source, file, file, IOContext.READONCE);
+                    }
+                }
+            }
+            return directory;
+        }
+    };
+
+    abstract Directory open(Path path, LuceneConfig.IndexConfig indexConfig) throws IOException;
+}
@@ -0,0 +1,124 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Reads DocValues of search hits. Hits are visited in document order, so each DocValues iterator is created once per segment and only
+ * advanced forward.
+ */
+class DocValuesLoader {
+
+    private final IndexReader reader;
+    private final Set<String> fields;
+
+    DocValuesLoader(IndexReader reader, Set<String> fields) {
+        this.reader = reader;
+        this.fields = fields;
+    }
+
+    /** @return DocValues maps, in the same order as hits */
+    @SneakyThrows(IOException.class)
+    List<Map<String, Object>> load(ScoreDoc[] hits) {
+        List<Map<String, Object>> values = new ArrayList<>(hits.length);
+        for (int i = 0; i < hits.length; i++) {
+            values.add(new HashMap<>());
+        }
+        if (fields.isEmpty()) {
+            return values;
+        }
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> hits[i].doc));
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        Map<String, DocIdSetIterator> iterators = new HashMap<>();
+        for (int i : order) {
+            int docId = hits[i].doc;
+            if (leaf == null || docId >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                iterators.clear();
+                for (String field : fields) {
+                    DocIdSetIterator iterator = getIterator(leaf.reader(), field);
+                    if (iterator != null) {
+                        iterators.put(field, iterator);
+                    }
+                }
+            }
+            int leafDocId = docId - leaf.docBase;
+            for (Map.Entry<String, DocIdSetIterator> entry : iterators.entrySet()) {
+                Object value = readValue(entry.getValue(), leafDocId);
+                if (value != null) {
+                    values.get(i).put(entry.getKey(), value);
+                }
+            }
+        }
+        return values;
+    }
+
+    private DocIdSetIterator getIterator(LeafReader leafReader, String field) throws IOException {
+        FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null) {
+            return null;
+        }
+        switch (fieldInfo.getDocValuesType()) {
+            case NUMERIC:
+                return leafReader.getNumericDocValues(field);
+            case BINARY:
+                return leafReader.getBinaryDocValues(field);
+            case SORTED:
+                return leafReader.getSortedDocValues(field);
+            case SORTED_NUMERIC:
+                return leafReader.getSortedNumericDocValues(field);
+            case SORTED_SET:
+                return leafReader.getSortedSetDocValues(field);
+            default:
+                return null;
+        }
+    }
+
+    /** Numeric values are returned as Long, binary and sorted as String, multi valued as List */
+    private Object readValue(DocIdSetIterator iterator, int leafDocId) throws IOException {
+        if (iterator.docID() > leafDocId) {
+            return null;
+        }
+        if (iterator instanceof NumericDocValues) {
+            NumericDocValues docValues = (NumericDocValues) iterator;
+            return docValues.advanceExact(leafDocId) ? docValues.longValue() : null;
+        } else if (iterator instanceof BinaryDocValues) {
+            BinaryDocValues docValues = (BinaryDocValues) iterator;
+            return docValues.advanceExact(leafDocId) ? docValues.binaryValue().utf8ToString() : null;
+        } else if (iterator instanceof SortedDocValues) {
+            SortedDocValues docValues = (SortedDocValues) iterator;
+            return docValues.advanceExact(leafDocId) ? docValues.lookupOrd(docValues.ordValue()).utf8ToString() : null;
+        } else if (iterator instanceof SortedNumericDocValues) {
+            SortedNumericDocValues docValues = (SortedNumericDocValues) iterator;
+            if (!docValues.advanceExact(leafDocId)) {
+                return null;
+            }
+            List<Long> list = new ArrayList<>(docValues.docValueCount());
+            for (int i = 0; i < docValues.docValueCount(); i++) {
+                list.add(docValues.nextValue());
+            }
+            return list;
+        } else if (iterator instanceof SortedSetDocValues) {
+            SortedSetDocValues docValues = (SortedSetDocValues) iterator;
+            if (!docValues.advanceExact(leafDocId)) {
+                return null;
+            }
+            List<String> list = new ArrayList<>();
+            for (long ord = docValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docValues.nextOrd()) {
+                list.add(docValues.lookupOrd(ord).utf8ToString());
+            }
+            return list;
+        }
+        return null;
+    }
+}
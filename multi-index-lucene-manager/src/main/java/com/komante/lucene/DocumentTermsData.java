@@ -0,0 +1,58 @@
+package com.komante.lucene;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Terms of one document field, in parallel arrays. Term i has its frequencies at index i of frequency arrays, and its offsets from
+ * {@code offsetsStarts[i]} to {@code offsetsStarts[i + 1]} of offset arrays. Terms are sorted. Arrays are shared, not copied, and must
+ * not be modified.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class DocumentTermsData {
+
+    private final String id;
+    private final int size;
+    /** UTF-8 bytes of all terms, term i is from {@code termStarts[i]} to {@code termStarts[i + 1]} */
+    private final byte[] termBytes;
+    private final int[] termStarts;
+    /** Frequencies in this document */
+    private final int[] termFreqs;
+    /** Number of documents of the index with the term */
+    private final int[] docFreqs;
+    /** Frequencies in all documents of the index */
+    private final long[] totalTermFreqs;
+    /** Empty if offsets weren't requested */
+    private final int[] offsetsStarts;
+    private final int[] startOffsets;
+    private final int[] endOffsets;
+
+    public String getTerm(int i) {
+        return getTermBytes(i).utf8ToString();
+    }
+
+    public BytesRef getTermBytes(int i) {
+        return new BytesRef(termBytes, termStarts[i], termStarts[i + 1] - termStarts[i]);
+    }
+
+    /** Object per term form, as returned by {@link LuceneManager#getDocumentTerms} */
+    public List<TermVectorData> toTermVectorData() {
+        List<TermVectorData> termsData = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TermVectorData termVectorData = new TermVectorData(getTerm(i), termFreqs[i], docFreqs[i], totalTermFreqs[i]);
+            if (offsetsStarts.length > 0) {
+                for (int j = offsetsStarts[i]; j < offsetsStarts[i + 1]; j++) {
+                    termVectorData.addOffset(startOffsets[j], endOffsets[j]);
+                }
+            }
+            termsData.add(termVectorData);
+        }
+        return termsData;
+    }
+}
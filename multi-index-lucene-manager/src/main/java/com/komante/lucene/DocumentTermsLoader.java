@@ -0,0 +1,152 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads term vectors of many documents into {@link DocumentTermsData}. Global statistics are read once for all distinct terms of the
+ * batch, from {@link TermStatsCache}, or in one sorted pass over each segment.
+ */
+class DocumentTermsLoader {
+
+    private final IndexReader reader;
+    private final TermStatsCache statsCache;
+    private final String field;
+    private final boolean includeOffsets;
+
+    DocumentTermsLoader(IndexReader reader, TermStatsCache statsCache, String field, boolean includeOffsets) {
+        this.reader = reader;
+        this.statsCache = statsCache;
+        this.field = field;
+        this.includeOffsets = includeOffsets;
+    }
+
+    /**
+     * @param docIds document numbers, {@link IdLookup#NOT_FOUND} for missing documents
+     * @return terms data in the same order as documents, null for missing documents or documents without term vector
+     */
+    @SneakyThrows(IOException.class)
+    List<DocumentTermsData> load(List<String> ids, int[] docIds) {
+        BytesRefHash batchTerms = new BytesRefHash();
+        List<TermsBuilder> builders = new ArrayList<>(docIds.length);
+        PostingsEnum postings = null;
+        for (int d = 0; d < docIds.length; d++) {
+            Terms termVector = docIds[d] == IdLookup.NOT_FOUND ? null : reader.getTermVector(docIds[d], field);
+            if (termVector == null) {
+                builders.add(null);
+                continue;
+            }
+            TermsBuilder builder = new TermsBuilder(ids.get(d));
+            TermsEnum termsEnum = termVector.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                int ord = batchTerms.add(term);
+                //term vector of one document has frequency in that document
+                builder.addTerm(term, ord < 0 ? -ord - 1 : ord, (int) termsEnum.totalTermFreq());
+                if (includeOffsets) {
+                    postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+                    postings.nextDoc();
+                    int freq = postings.freq();
+                    for (int i = 0; i < freq; i++) {
+                        postings.nextPosition();
+                        builder.addOffset(postings.startOffset(), postings.endOffset());
+                    }
+                }
+            }
+            builders.add(builder);
+        }
+
+        int termCount = batchTerms.size();
+        int[] sortedOrds = batchTerms.sort();
+        BytesRef[] sortedTerms = new BytesRef[termCount];
+        for (int i = 0; i < termCount; i++) {
+            sortedTerms[i] = batchTerms.get(sortedOrds[i], new BytesRef());
+        }
+        int[] sortedDocFreqs = new int[termCount];
+        long[] sortedTotalTermFreqs = new long[termCount];
+        statsCache.termStats(reader, field, sortedTerms, sortedDocFreqs, sortedTotalTermFreqs);
+        int[] docFreqs = new int[termCount];
+        long[] totalTermFreqs = new long[termCount];
+        for (int i = 0; i < termCount; i++) {
+            docFreqs[sortedOrds[i]] = sortedDocFreqs[i];
+            totalTermFreqs[sortedOrds[i]] = sortedTotalTermFreqs[i];
+        }
+
+        List<DocumentTermsData> documentsTerms = new ArrayList<>(builders.size());
+        for (TermsBuilder builder : builders) {
+            documentsTerms.add(builder == null ? null : builder.build(docFreqs, totalTermFreqs));
+        }
+        return documentsTerms;
+    }
+
+    /** Growing columns of one document, with term ordinals of the batch instead of statistics */
+    private class TermsBuilder {
+        private final String id;
+        private int size;
+        private byte[] termBytes = new byte[256];
+        private int[] termStarts = new int[33];
+        private int[] termOrds = new int[32];
+        private int[] termFreqs = new int[32];
+        private int[] offsetsStarts = new int[includeOffsets ? 33 : 0];
+        private int[] startOffsets = new int[includeOffsets ? 32 : 0];
+        private int[] endOffsets = new int[includeOffsets ? 32 : 0];
+        private int offsetsSize;
+
+        TermsBuilder(String id) {
+            this.id = id;
+        }
+
+        void addTerm(BytesRef term, int ord, int freq) {
+            //each column grows on its own, oversizing differs by requested size
+            termStarts = ArrayUtil.grow(termStarts, size + 2);
+            termOrds = ArrayUtil.grow(termOrds, size + 1);
+            termFreqs = ArrayUtil.grow(termFreqs, size + 1);
+            if (includeOffsets) {
+                offsetsStarts = ArrayUtil.grow(offsetsStarts, size + 2);
+            }
+            int start = termStarts[size];
+            termBytes = ArrayUtil.grow(termBytes, start + term.length);
+            System.arraycopy(term.bytes, term.offset, termBytes, start, term.length);
+            termOrds[size] = ord;
+            termFreqs[size] = freq;
+            if (includeOffsets) {
+                offsetsStarts[size] = offsetsSize;
+                offsetsStarts[size + 1] = offsetsSize;
+            }
+            size++;
+            termStarts[size] = start + term.length;
+        }
+
+        void addOffset(int startOffset, int endOffset) {
+            startOffsets = ArrayUtil.grow(startOffsets, offsetsSize + 1);
+            endOffsets = ArrayUtil.grow(endOffsets, offsetsSize + 1);
+            startOffsets[offsetsSize] = startOffset;
+            endOffsets[offsetsSize] = endOffset;
+            offsetsSize++;
+            offsetsStarts[size] = offsetsSize;
+        }
+
+        DocumentTermsData build(int[] batchDocFreqs, long[] batchTotalTermFreqs) {
+            int[] docFreqs = new int[size];
+            long[] totalTermFreqs = new long[size];
+            for (int i = 0; i < size; i++) {
+                docFreqs[i] = batchDocFreqs[termOrds[i]];
+                totalTermFreqs[i] = batchTotalTermFreqs[termOrds[i]];
+            }
+            return new DocumentTermsData(id, size, ArrayUtil.copyOfSubArray(termBytes, 0, termStarts[size]),
+                ArrayUtil.copyOfSubArray(termStarts, 0, size + 1), ArrayUtil.copyOfSubArray(termFreqs, 0, size), docFreqs,
+                totalTermFreqs, includeOffsets ? ArrayUtil.copyOfSubArray(offsetsStarts, 0, size + 1) : offsetsStarts,
+                ArrayUtil.copyOfSubArray(startOffsets, 0, offsetsSize), ArrayUtil.copyOfSubArray(endOffsets, 0, offsetsSize));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Collects facets of all matching documents in one pass, only from DocValues. Term values are counted by segment ordinal in primitive
+ * array, which is folded into counts by term when segment is done, so per document work doesn't allocate. Numeric fields of ranges and
+ * stats are read once per document. Collectors of searcher slices and of several indexes are merged before result is created.
+ */
+class FacetCollector extends SimpleCollector {
+
+    private final FacetRequest request;
+    private final String[] termFields;
+    /** Distinct fields of ranges and stats */
+    private final String[] numericFields;
+    /** Indexes of ranges of each numeric field */
+    private final int[][] fieldRanges;
+    private final boolean[] fieldStats;
+    private final NumericRange[] ranges;
+
+    private long totalHits;
+    /** Counts of terms seen in all folded segments, by id in hash, per term field */
+    private final BytesRefHash[] terms;
+    private final long[][] termCounts;
+    private final long[] rangeCounts;
+    /** Last document counted in each range, so document with several values in range is counted once */
+    private final int[] rangeLastDoc;
+    private final long[] statsCount;
+    private final long[] statsMin;
+    private final long[] statsMax;
+    private final long[] statsSum;
+
+    /** DocValues and ordinal counts of current segment, folded in {@link #foldSegment} */
+    private final SortedSetDocValues[] segmentTerms;
+    private final int[][] segmentOrdCounts;
+    private final SortedNumericDocValues[] segmentNumerics;
+    private int docBase;
+
+    FacetCollector(FacetRequest request) {
+        this.request = request;
+        termFields = request.getTermFields().toArray(new String[0]);
+        ranges = request.getRanges().toArray(new NumericRange[0]);
+        Set<String> numeric = new LinkedHashSet<>();
+        request.getRanges().forEach(range -> numeric.add(range.getField()));
+        numeric.addAll(request.getStatsFields());
+        numericFields = numeric.toArray(new String[0]);
+        fieldRanges = new int[numericFields.length][];
+        fieldStats = new boolean[numericFields.length];
+        for (int field = 0; field < numericFields.length; field++) {
+            String name = numericFields[field];
+            fieldRanges[field] = IntStream.range(0, ranges.length).filter(i -> ranges[i].getField().equals(name)).toArray();
+            fieldStats[field] = request.getStatsFields().contains(name);
+        }
+        terms = new BytesRefHash[termFields.length];
+        termCounts = new long[termFields.length][];
+        segmentTerms = new SortedSetDocValues[termFields.length];
+        segmentOrdCounts = new int[termFields.length][];
+        for (int field = 0; field < termFields.length; field++) {
+            terms[field] = new BytesRefHash();
+            termCounts[field] = new long[16];
+            segmentOrdCounts[field] = new int[0];
+        }
+        rangeCounts = new long[ranges.length];
+        rangeLastDoc = new int[ranges.length];
+        segmentNumerics = new SortedNumericDocValues[numericFields.length];
+        statsCount = new long[numericFields.length];
+        statsMin = new long[numericFields.length];
+        statsMax = new long[numericFields.length];
+        statsSum = new long[numericFields.length];
+        Arrays.fill(rangeLastDoc, -1);
+        Arrays.fill(statsMin, Long.MAX_VALUE);
+        Arrays.fill(statsMax, Long.MIN_VALUE);
+    }
+
+    static CollectorManager<FacetCollector, FacetCollector> manager(FacetRequest request) {
+        return new Manager(request);
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        foldSegment();
+        LeafReader reader = context.reader();
+        docBase = context.docBase;
+        for (int field = 0; field < termFields.length; field++) {
+            //SORTED field is returned as single valued SORTED_SET, missing field as empty
+            SortedSetDocValues values = DocValues.getSortedSet(reader, termFields[field]);
+            segmentTerms[field] = values;
+            int valueCount = Math.toIntExact(values.getValueCount());
+            if (segmentOrdCounts[field].length < valueCount) {
+                segmentOrdCounts[field] = new int[ArrayUtil.oversize(valueCount, Integer.BYTES)];
+            }
+        }
+        for (int field = 0; field < numericFields.length; field++) {
+            segmentNumerics[field] = DocValues.getSortedNumeric(reader, numericFields[field]);
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        totalHits++;
+        for (int field = 0; field < termFields.length; field++) {
+            SortedSetDocValues values = segmentTerms[field];
+            if (values.advanceExact(doc)) {
+                int[] ordCounts = segmentOrdCounts[field];
+                for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                    ordCounts[(int) ord]++;
+                }
+            }
+        }
+        for (int field = 0; field < numericFields.length; field++) {
+            SortedNumericDocValues values = segmentNumerics[field];
+            if (values.advanceExact(doc)) {
+                for (int i = 0, count = values.docValueCount(); i < count; i++) {
+                    collectValue(field, docBase + doc, values.nextValue());
+                }
+            }
+        }
+    }
+
+    private void collectValue(int field, int doc, long value) {
+        for (int range : fieldRanges[field]) {
+            if (rangeLastDoc[range] != doc && ranges[range].contains(value)) {
+                rangeLastDoc[range] = doc;
+                rangeCounts[range]++;
+            }
+        }
+        if (fieldStats[field]) {
+            statsCount[field]++;
+            statsMin[field] = Math.min(statsMin[field], value);
+            statsMax[field] = Math.max(statsMax[field], value);
+            statsSum[field] += value;
+        }
+    }
+
+    /** Adds ordinal counts of current segment to counts by term, and clears them for the next segment */
+    private void foldSegment() throws IOException {
+        for (int field = 0; field < termFields.length; field++) {
+            SortedSetDocValues values = segmentTerms[field];
+            if (values == null) {
+                continue;
+            }
+            int[] ordCounts = segmentOrdCounts[field];
+            int valueCount = Math.toIntExact(values.getValueCount());
+            for (int ord = 0; ord < valueCount; ord++) {
+                if (ordCounts[ord] > 0) {
+                    addTermCount(field, values.lookupOrd(ord), ordCounts[ord]);
+                    ordCounts[ord] = 0;
+                }
+            }
+            segmentTerms[field] = null;
+        }
+    }
+
+    private void addTermCount(int field, BytesRef term, long count) {
+        int id = terms[field].add(term);
+        if (id < 0) {
+            id = -id - 1;
+        } else if (id >= termCounts[field].length) {
+            termCounts[field] = ArrayUtil.grow(termCounts[field], id + 1);
+        }
+        termCounts[field][id] += count;
+    }
+
+    /** Adds counts of other collector, which collected different documents, e.g. of another slice or index */
+    @SneakyThrows(IOException.class)
+    void merge(FacetCollector other) {
+        foldSegment();
+        other.foldSegment();
+        totalHits += other.totalHits;
+        BytesRef scratch = new BytesRef();
+        for (int field = 0; field < termFields.length; field++) {
+            for (int id = 0; id < other.terms[field].size(); id++) {
+                addTermCount(field, other.terms[field].get(id, scratch), other.termCounts[field][id]);
+            }
+        }
+        for (int range = 0; range < ranges.length; range++) {
+            rangeCounts[range] += other.rangeCounts[range];
+        }
+        for (int field = 0; field < numericFields.length; field++) {
+            statsCount[field] += other.statsCount[field];
+            statsMin[field] = Math.min(statsMin[field], other.statsMin[field]);
+            statsMax[field] = Math.max(statsMax[field], other.statsMax[field]);
+            statsSum[field] += other.statsSum[field];
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    FacetResult toResult() {
+        foldSegment();
+        Map<String, Map<String, Long>> topTerms = new HashMap<>();
+        for (int field = 0; field < termFields.length; field++) {
+            topTerms.put(termFields[field], topTerms(field));
+        }
+        Map<String, Map<String, Long>> rangeResults = new HashMap<>();
+        for (int range = 0; range < ranges.length; range++) {
+            rangeResults.computeIfAbsent(ranges[range].getField(), field -> new LinkedHashMap<>())
+                .put(ranges[range].getLabel(), rangeCounts[range]);
+        }
+        Map<String, NumericStats> stats = new HashMap<>();
+        for (int field = 0; field < numericFields.length; field++) {
+            if (fieldStats[field] && statsCount[field] > 0) {
+                stats.put(numericFields[field], new NumericStats(statsCount[field], statsMin[field], statsMax[field], statsSum[field]));
+            }
+        }
+        return new FacetResult(totalHits, topTerms, rangeResults, stats);
+    }
+
+    /** Most frequent terms, ties by term order */
+    private Map<String, Long> topTerms(int field) {
+        BytesRefHash fieldTerms = terms[field];
+        long[] counts = termCounts[field];
+        BytesRef left = new BytesRef();
+        BytesRef right = new BytesRef();
+        Comparator<Integer> byCount = (a, b) -> Long.compare(counts[b], counts[a]);
+        List<Integer> top = IntStream.range(0, fieldTerms.size()).boxed()
+            .sorted(byCount.thenComparing((a, b) -> fieldTerms.get(a, left).compareTo(fieldTerms.get(b, right))))
+            .limit(request.getTopTerms()).collect(Collectors.toList());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id : top) {
+            result.put(fieldTerms.get(id, left).utf8ToString(), counts[id]);
+        }
+        return result;
+    }
+
+    private static class Manager implements CollectorManager<FacetCollector, FacetCollector> {
+        private final FacetRequest request;
+
+        Manager(FacetRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public FacetCollector newCollector() {
+            return new FacetCollector(request);
+        }
+
+        @Override
+        public FacetCollector reduce(Collection<FacetCollector> collectors) {
+            List<FacetCollector> slices = new ArrayList<>(collectors);
+            FacetCollector merged = slices.get(0);
+            for (int i = 1; i < slices.size(); i++) {
+                merged.merge(slices.get(i));
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.komante.lucene;
+
+import lombok.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Facets and aggregations computed over DocValues of all matching documents, see {@link LuceneManager#facets}. Requests with equal
+ * values are equal, so they can be part of result cache key
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder(toBuilder = true)
+@EqualsAndHashCode
+@ToString
+public class FacetRequest {
+    public static class FacetRequestBuilder {
+    }
+
+    public static FacetRequestBuilder facetRequestBuilder() {
+        return new FacetRequest().toBuilder();
+    }
+
+    /** SORTED or SORTED_SET DocValues fields, document is counted once for each of its values */
+    private Set<String> termFields = Collections.emptySet();
+    /** Number of the most frequent values returned for each term field */
+    private int topTerms = 10;
+    /** Ranges of NUMERIC or SORTED_NUMERIC DocValues fields, document is counted once in each range it has value in */
+    private List<NumericRange> ranges = Collections.emptyList();
+    /** NUMERIC or SORTED_NUMERIC DocValues fields to aggregate into min, max and sum of their values */
+    private Set<String> statsFields = Collections.emptySet();
+}
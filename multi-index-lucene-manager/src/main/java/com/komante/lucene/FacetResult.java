@@ -0,0 +1,21 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/** Facets of all documents matching a query */
+@Getter
+@AllArgsConstructor
+@ToString
+public class FacetResult {
+    private long totalHits;
+    /** Most frequent values of each term field, with document counts, by descending count */
+    private Map<String, Map<String, Long>> termCounts;
+    /** Document counts of each range field, by range label, in order of ranges in request */
+    private Map<String, Map<String, Long>> rangeCounts;
+    /** Stats of each stats field, without entry if no matching document has value */
+    private Map<String, NumericStats> stats;
+}
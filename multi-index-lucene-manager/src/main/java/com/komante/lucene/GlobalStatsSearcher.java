@@ -0,0 +1,80 @@
+package com.komante.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermStatistics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Searches one reader, but scores with term and collection statistics summed over all readers of a federated search. That way scores
+ * from different indexes are comparable, and their top hits can be merged.
+ */
+class GlobalStatsSearcher extends IndexSearcher {
+
+    private final List<IndexReader> allReaders;
+
+    /** Searcher with the same slices, executor, similarity and query cache as the wrapped one */
+    static GlobalStatsSearcher of(IndexSearcher searcher, List<IndexReader> allReaders) {
+        LeafSlice[] slices = searcher.getSlices();
+        if (slices == null) {
+            return new GlobalStatsSearcher(searcher, allReaders);
+        }
+        //anonymous class, so slices are captured before IndexSearcher constructor calls slices()
+        return new GlobalStatsSearcher(searcher, allReaders) {
+            @Override
+            protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                return slices;
+            }
+        };
+    }
+
+    private GlobalStatsSearcher(IndexSearcher searcher, List<IndexReader> allReaders) {
+        super(searcher.getIndexReader(), searcher.getExecutor());
+        setSimilarity(searcher.getSimilarity());
+        setQueryCache(searcher.getQueryCache());
+        setQueryCachingPolicy(searcher.getQueryCachingPolicy());
+        this.allReaders = allReaders;
+    }
+
+    @Override
+    public TermStatistics termStatistics(Term term, int docFreq, long totalTermFreq) throws IOException {
+        long globalDocFreq = 0;
+        long globalTotalTermFreq = 0;
+        for (IndexReader reader : allReaders) {
+            if (reader == getIndexReader()) {
+                globalDocFreq += docFreq;
+                globalTotalTermFreq += totalTermFreq;
+            } else {
+                globalDocFreq += reader.docFreq(term);
+                globalTotalTermFreq += reader.totalTermFreq(term);
+            }
+        }
+        if (globalDocFreq == 0) {
+            return null;
+        }
+        return new TermStatistics(term.bytes(), globalDocFreq, globalTotalTermFreq);
+    }
+
+    @Override
+    public CollectionStatistics collectionStatistics(String field) throws IOException {
+        long maxDoc = 0;
+        long docCount = 0;
+        long sumTotalTermFreq = 0;
+        long sumDocFreq = 0;
+        for (IndexReader reader : allReaders) {
+            maxDoc += reader.maxDoc();
+            docCount += reader.getDocCount(field);
+            sumTotalTermFreq += reader.getSumTotalTermFreq(field);
+            sumDocFreq += reader.getSumDocFreq(field);
+        }
+        if (docCount == 0) {
+            return null;
+        }
+        return new CollectionStatistics(field, maxDoc, docCount, sumTotalTermFreq, sumDocFreq);
+    }
+}
@@ -0,0 +1,135 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Finds documents by unique id term without scoring: the term is sought directly in each segment, and deleted documents are skipped.
+ * Per-segment terms enums are kept between calls, and reused for segments which survive refresh. Not thread safe, one instance is
+ * used per thread and id field.
+ */
+class IdLookup {
+
+    static final int NOT_FOUND = -1;
+
+    private final String idField;
+    private IndexReader reader;
+    private SegmentLookup[] segments = new SegmentLookup[0];
+    /** By segment core, which is shared by readers of the segment until it is merged away */
+    private Map<Object, SegmentLookup> segmentsByCore = new HashMap<>();
+
+    IdLookup(String idField) {
+        this.idField = idField;
+    }
+
+    /** Prepares lookup for a reader, keeping state of segments which are still in the reader */
+    @SneakyThrows(IOException.class)
+    void setReader(IndexReader reader) {
+        if (reader == this.reader) {
+            return;
+        }
+        List<LeafReaderContext> leaves = reader.leaves();
+        SegmentLookup[] newSegments = new SegmentLookup[leaves.size()];
+        Map<Object, SegmentLookup> newSegmentsByCore = new HashMap<>();
+        for (int i = 0; i < newSegments.length; i++) {
+            LeafReaderContext leaf = leaves.get(i);
+            LeafReader leafReader = leaf.reader();
+            Object coreKey = leafReader.getCoreCacheHelper() != null ? leafReader.getCoreCacheHelper().getKey() : leafReader;
+            SegmentLookup segment = segmentsByCore.get(coreKey);
+            if (segment == null) {
+                Terms terms = leafReader.terms(idField);
+                segment = new SegmentLookup(terms != null ? terms.iterator() : null);
+            }
+            //deletes change without changing the core
+            segment.docBase = leaf.docBase;
+            segment.liveDocs = leafReader.getLiveDocs();
+            newSegments[i] = segment;
+            newSegmentsByCore.put(coreKey, segment);
+        }
+        this.reader = reader;
+        segments = newSegments;
+        segmentsByCore = newSegmentsByCore;
+    }
+
+    /** Document number of the id, or {@link #NOT_FOUND}. Throws IllegalStateException if more than one live document has the id */
+    int lookup(BytesRef id) {
+        int docId = NOT_FOUND;
+        for (SegmentLookup segment : segments) {
+            int segmentDocId = segment.lookup(id);
+            if (segmentDocId != NOT_FOUND) {
+                if (docId != NOT_FOUND) {
+                    throw new IllegalStateException("Id " + id.utf8ToString() + " of field " + idField + " is not unique");
+                }
+                docId = segmentDocId;
+            }
+        }
+        return docId;
+    }
+
+    /**
+     * Document numbers of many ids, in order of given ids. Ids are sought in sorted order, so terms dictionary of each segment is
+     * traversed forward.
+     */
+    int[] lookup(BytesRef[] ids) {
+        int[] order = IntStream.range(0, ids.length).boxed().sorted(Comparator.comparing(i -> ids[i])).mapToInt(i -> i).toArray();
+        int[] docIds = new int[ids.length];
+        Arrays.fill(docIds, NOT_FOUND);
+        for (SegmentLookup segment : segments) {
+            for (int i : order) {
+                int segmentDocId = segment.lookup(ids[i]);
+                if (segmentDocId != NOT_FOUND) {
+                    if (docIds[i] != NOT_FOUND) {
+                        throw new IllegalStateException("Id " + ids[i].utf8ToString() + " of field " + idField + " is not unique");
+                    }
+                    docIds[i] = segmentDocId;
+                }
+            }
+        }
+        return docIds;
+    }
+
+    private static class SegmentLookup {
+        private final TermsEnum termsEnum;
+        private PostingsEnum postings;
+        private int docBase;
+        private Bits liveDocs;
+
+        SegmentLookup(TermsEnum termsEnum) {
+            this.termsEnum = termsEnum;
+        }
+
+        @SneakyThrows(IOException.class)
+        int lookup(BytesRef id) {
+            if (termsEnum == null || !termsEnum.seekExact(id)) {
+                return NOT_FOUND;
+            }
+            postings = termsEnum.postings(postings, PostingsEnum.NONE);
+            int docId = NOT_FOUND;
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    if (docId != NOT_FOUND) {
+                        throw new IllegalStateException("Id " + id.utf8ToString() + " is not unique");
+                    }
+                    docId = docBase + doc;
+                }
+            }
+            return docId;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps histograms of all metrics in memory, per index, to be polled with {@link #getSnapshot()}. Recording is lock free. Histogram
+ * buckets grow exponentially, with 8 linear sub-buckets, so percentiles are within 12.5% of recorded values.
+ */
+public class InMemoryMetricsListener implements LuceneMetricsListener {
+
+    public enum Metric {
+        INDEX_NANOS, INDEXED_DOCUMENTS, DELETE_NANOS, COMMIT_NANOS, REFRESH_NANOS, SEARCH_NANOS, SEARCH_HITS, HIGHLIGHT_SEARCH_NANOS,
+        HIGHLIGHT_LOAD_NANOS, HIGHLIGHT_FRAGMENT_NANOS, HIGHLIGHTED_DOCUMENTS
+    }
+
+    private final Map<Index, Map<Metric, Histogram>> histograms = new ConcurrentHashMap<>();
+    private final Map<Index, SegmentStats> segmentStats = new ConcurrentHashMap<>();
+
+    @Override
+    public void indexed(Index index, int documents, long nanos) {
+        record(index, Metric.INDEX_NANOS, nanos);
+        record(index, Metric.INDEXED_DOCUMENTS, documents);
+    }
+
+    @Override
+    public void deleted(Index index, long nanos) {
+        record(index, Metric.DELETE_NANOS, nanos);
+    }
+
+    @Override
+    public void committed(Index index, long nanos) {
+        record(index, Metric.COMMIT_NANOS, nanos);
+    }
+
+    @Override
+    public void refreshed(Index index, long nanos) {
+        record(index, Metric.REFRESH_NANOS, nanos);
+    }
+
+    @Override
+    public void searched(Index index, String operation, long totalHits, long nanos) {
+        record(index, Metric.SEARCH_NANOS, nanos);
+        record(index, Metric.SEARCH_HITS, totalHits);
+    }
+
+    @Override
+    public void highlighted(Index index, int documents, long searchNanos, long loadNanos, long fragmentNanos) {
+        record(index, Metric.HIGHLIGHTED_DOCUMENTS, documents);
+        record(index, Metric.HIGHLIGHT_SEARCH_NANOS, searchNanos);
+        record(index, Metric.HIGHLIGHT_LOAD_NANOS, loadNanos);
+        record(index, Metric.HIGHLIGHT_FRAGMENT_NANOS, fragmentNanos);
+    }
+
+    @Override
+    public void segmentsChanged(Index index, int segments, long writerRamBytes, int pendingDeletes) {
+        segmentStats.put(index, new SegmentStats(segments, writerRamBytes, pendingDeletes));
+    }
+
+    /** Histograms of all indexes with recorded metrics */
+    public Map<Index, Map<Metric, HistogramSnapshot>> getSnapshot() {
+        Map<Index, Map<Metric, HistogramSnapshot>> snapshot = new HashMap<>();
+        histograms.forEach((index, indexHistograms) -> {
+            Map<Metric, HistogramSnapshot> indexSnapshot = new EnumMap<>(Metric.class);
+            indexHistograms.forEach((metric, histogram) -> indexSnapshot.put(metric, histogram.snapshot()));
+            snapshot.put(index, indexSnapshot);
+        });
+        return snapshot;
+    }
+
+    /** Histogram of one metric, empty if nothing was recorded */
+    public HistogramSnapshot getHistogram(Index index, Metric metric) {
+        Histogram histogram = histograms.getOrDefault(index, Map.of()).get(metric);
+        return histogram != null ? histogram.snapshot() : new Histogram().snapshot();
+    }
+
+    /** Segment state after the last opened searcher, null if index hasn't opened searcher yet */
+    public SegmentStats getSegmentStats(Index index) {
+        return segmentStats.get(index);
+    }
+
+    public void reset() {
+        histograms.clear();
+        segmentStats.clear();
+    }
+
+    private void record(Index index, Metric metric, long value) {
+        histograms.computeIfAbsent(index, i -> new ConcurrentHashMap<>()).computeIfAbsent(metric, m -> new Histogram()).record(value);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class SegmentStats {
+        private int segments;
+        private long writerRamBytes;
+        private int pendingDeletes;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class HistogramSnapshot {
+        private long count;
+        private long sum;
+        private long max;
+        private long p50;
+        private long p90;
+        private long p99;
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+
+    /** Histogram of non-negative values */
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(bucket(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long maxValue = max.get();
+            return new HistogramSnapshot(total, sum.sum(), maxValue, percentile(counts, total, 0.5, maxValue),
+                    percentile(counts, total, 0.9, maxValue), percentile(counts, total, 0.99, maxValue));
+        }
+
+        /** Upper bound of the bucket which contains the percentile, but not more than max */
+        private static long percentile(long[] counts, long total, double percentile, long maxValue) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), maxValue);
+                }
+            }
+            return 0;
+        }
+
+        /** Values below SUB_BUCKETS have own bucket, bigger ones are split by highest bit, and by next SUB_BUCKET_BITS bits */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long subBucket = bucket % SUB_BUCKETS;
+            long next = (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+            //last bucket ends at Long.MAX_VALUE, its next value overflows
+            return next < 0 ? Long.MAX_VALUE : next - 1;
+        }
+    }
+}
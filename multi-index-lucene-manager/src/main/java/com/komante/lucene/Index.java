@@ -0,0 +1,40 @@
+package com.komante.lucene;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Represents lucene index. Indexes with the same name are equal. Sharded index is logical, each of its shards is an index on its own,
+ * with settings of the logical index
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class Index {
+
+	/** Separates name of logical index from shard number, in names of shard indexes */
+	static final String SHARD_SEPARATOR = "@shard";
+
+	private final String name;
+
+	public Index(@NonNull String name) {
+		this.name = name;
+	}
+
+	/** Index of one shard of this index, stored in its own directory */
+	public Index shard(int shard) {
+		return new Index(name + SHARD_SEPARATOR + shard);
+	}
+
+	public boolean isShard() {
+		return name.contains(SHARD_SEPARATOR);
+	}
+
+	/** Logical index of a shard, or this index */
+	public Index getLogicalIndex() {
+		return isShard() ? new Index(name.substring(0, name.lastIndexOf(SHARD_SEPARATOR))) : this;
+	}
+
+}
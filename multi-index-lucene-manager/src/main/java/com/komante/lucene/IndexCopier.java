@@ -0,0 +1,111 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Incremental copy of one commit into another directory. Segment files are written once and never changed, so file with the same name,
+ * length and footer checksum in destination is not copied again. Names alone are not enough, because new generation of reindexed index
+ * starts again from the first segment name. Segments file of the commit is copied last, so destination switches to the new commit
+ * only when all its files are durable.
+ */
+@Slf4j
+class IndexCopier {
+
+    private IndexCopier() {
+    }
+
+    /** Copies missing files of the commit, which must be protected from deletion during copy, e.g. by snapshot */
+    @SneakyThrows(IOException.class)
+    static BackupResult copy(Index index, IndexCommit commit, Directory destination) {
+        long start = System.nanoTime();
+        Directory source = commit.getDirectory();
+        Set<String> existing = new HashSet<>(List.of(destination.listAll()));
+        //segments file of newer commit, e.g. of previous generation of reindexed index, would be opened instead of the copied one
+        for (String file : existing) {
+            if (file.startsWith(IndexFileNames.SEGMENTS + "_")
+                && SegmentInfos.generationFromSegmentsFileName(file) > commit.getGeneration()) {
+                destination.deleteFile(file);
+            }
+        }
+        List<String> files = new ArrayList<>(commit.getFileNames());
+        //segments file last
+        files.remove(commit.getSegmentsFileName());
+        files.add(commit.getSegmentsFileName());
+        List<String> copied = new ArrayList<>();
+        long copiedBytes = 0;
+        int reused = 0;
+        for (String file : files) {
+            if (existing.contains(file) && isSameFile(source, destination, file)) {
+                reused++;
+                continue;
+            }
+            if (existing.contains(file)) {
+                destination.deleteFile(file);
+            }
+            if (file.equals(commit.getSegmentsFileName())) {
+                destination.sync(copied);
+            }
+            destination.copyFrom(source, file, file, IOContext.READONCE);
+            copied.add(file);
+            copiedBytes += source.fileLength(file);
+        }
+        destination.sync(List.of(commit.getSegmentsFileName()));
+        destination.syncMetaData();
+        long durationMillis = (System.nanoTime() - start) / 1_000_000;
+        return new BackupResult(index, commit.getGeneration(), copied.size(), copiedBytes, reused, durationMillis);
+    }
+
+    /** Same length and checksum in footer, which is read without reading the whole file. Partially copied file is not the same */
+    private static boolean isSameFile(Directory source, Directory destination, String file) throws IOException {
+        if (destination.fileLength(file) != source.fileLength(file)) {
+            return false;
+        }
+        try (IndexInput sourceInput = source.openInput(file, IOContext.READONCE);
+             IndexInput destinationInput = destination.openInput(file, IOContext.READONCE)) {
+            return CodecUtil.retrieveChecksum(sourceInput) == CodecUtil.retrieveChecksum(destinationInput);
+        } catch (CorruptIndexException e) {
+            log.debug("Copying again invalid file {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes files of previous commits from destination. Files which can't be deleted yet, e.g. because they are open on Windows, are
+     * deleted by the next copy
+     */
+    @SneakyThrows(IOException.class)
+    static void deleteStaleFiles(IndexCommit commit, Directory destination) {
+        Collection<String> commitFiles = commit.getFileNames();
+        for (String file : destination.listAll()) {
+            if (!commitFiles.contains(file) && !file.equals(IndexWriter.WRITE_LOCK_NAME) && isIndexFile(file)) {
+                try {
+                    destination.deleteFile(file);
+                } catch (IOException e) {
+                    log.debug("Can't delete stale file {} yet", file, e);
+                }
+            }
+        }
+    }
+
+    private static boolean isIndexFile(String file) {
+        return IndexFileNames.CODEC_FILE_PATTERN.matcher(file).matches() || file.startsWith(IndexFileNames.SEGMENTS)
+            || file.startsWith(IndexFileNames.PENDING_SEGMENTS);
+    }
+}
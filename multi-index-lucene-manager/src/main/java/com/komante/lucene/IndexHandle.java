@@ -0,0 +1,462 @@
+package com.komante.lucene;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.SoftDeletesDirectoryReaderWrapper;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.CloseableThreadLocal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One IndexHandle is created per directory to hold one open IndexWriter, and SearcherManager which reopens searchers.
+ * In NRT mode searchers are opened from the writer, and background thread keeps them refreshed.
+ * Clients don't access this class directly. It is used by LuceneService
+ */
+@Slf4j
+class IndexHandle {
+  private Index index;
+  @Getter
+  private Directory directory;
+  private IndexWriterConfig iwConfig;
+  @Getter(AccessLevel.MODULE)
+  private Analyzer analyzer;
+  private LuceneConfig.IndexConfig indexConfig;
+  private IndexWriter writer;
+  private volatile ReferenceManager<IndexSearcher> searcherManager;
+  private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+  @Getter(AccessLevel.MODULE)
+  private CommitScheduler commitScheduler;
+  @Getter(AccessLevel.MODULE)
+  private TermStatsCache termStatsCache;
+  /** Null if result cache is disabled */
+  @Getter(AccessLevel.MODULE)
+  private ResultCache resultCache;
+  /** Shared by searchers of all indexes */
+  private final QueryCache queryCache;
+  private final QueryCachingPolicy queryCachingPolicy;
+  private final LuceneMetricsListener metricsListener;
+  /** Operations in progress, see {@link IndexRegistry}. Negative while handle is claimed for closing */
+  private final AtomicInteger pins = new AtomicInteger();
+  @Getter(AccessLevel.MODULE)
+  private volatile long lastUsedNanos = System.nanoTime();
+  @Setter(AccessLevel.MODULE)
+  private Runnable searcherOpenedListener;
+  /** Time of warm-up queries on the last opened or refreshed searcher */
+  @Getter(AccessLevel.MODULE)
+  private volatile long lastWarmupMillis;
+  /** Protects commit from deletion while it is copied by backup or replica sync */
+  private SnapshotDeletionPolicy snapshotPolicy;
+  /** Null if replica is not configured */
+  private IndexReplica replica;
+  private ScheduledFuture<?> replicaSync;
+  /** Id lookups of each thread, by id field */
+  private final CloseableThreadLocal<Map<String, IdLookup>> idLookups = new CloseableThreadLocal<>();
+
+  public IndexHandle(Index index, Directory directory, IndexWriterConfig iwConfig, Analyzer analyzer,
+                     LuceneConfig.IndexConfig indexConfig, ScheduledExecutorService commitExecutor,
+                     ScheduledExecutorService replicaExecutor, QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
+                     LuceneMetricsListener metricsListener) {
+    this.index = index;
+    this.queryCache = queryCache;
+    this.queryCachingPolicy = queryCachingPolicy;
+    this.metricsListener = metricsListener;
+    this.directory = directory;
+    this.analyzer = analyzer;
+    this.indexConfig = indexConfig;
+    openWriter(iwConfig);
+    commitScheduler = new CommitScheduler(index, writer, indexConfig, commitExecutor, metricsListener);
+    termStatsCache = new TermStatsCache(indexConfig.getTermStatsCacheSize());
+    if (indexConfig.getResultCacheMaxEntries() > 0) {
+      resultCache = new ResultCache(indexConfig.getResultCacheMaxEntries(), indexConfig.getResultCacheMaxBytes());
+    }
+    if (indexConfig.getReplicaLocation() != null) {
+      replica = new IndexReplica(index, Paths.get(indexConfig.getReplicaLocation()).resolve(index.getName()),
+          indexConfig.getSoftDeletesField());
+      //first sync right after opening, in background, so copying existing index doesn't delay opening
+      replicaSync = replicaExecutor.scheduleWithFixedDelay(this::syncReplicaQuietly, 0, indexConfig.getReplicaSyncMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @SneakyThrows(IOException.class)
+  synchronized void closeResources() {
+    if (replica != null) {
+      replicaSync.cancel(false);
+      //waits for running sync
+      replica.close();
+    }
+    idLookups.close();
+    if (reopenThread != null) {
+      reopenThread.close();
+    }
+    if (searcherManager != null) {
+      searcherManager.close();
+    }
+    if (writer != null && writer.isOpen()) {
+      commitScheduler.close();
+      writer.close();
+    }
+    directory.close();
+  }
+
+  /** Closes searcher, and its NRT reopen thread. New searcher is opened on next use */
+  @SneakyThrows(IOException.class)
+  synchronized void closeSearcher() {
+    if (reopenThread != null) {
+      reopenThread.close();
+      reopenThread = null;
+    }
+    if (searcherManager != null) {
+      searcherManager.close();
+      searcherManager = null;
+    }
+    if (resultCache != null) {
+      resultCache.clear();
+    }
+  }
+
+  boolean isSearcherOpen() {
+    return searcherManager != null;
+  }
+
+  boolean isInMemory() {
+    return indexConfig.getDirectoryType() == DirectoryType.BYTE_BUFFERS;
+  }
+
+  /** Pins handle for an operation, unless it is claimed for closing */
+  boolean tryPin() {
+    while (true) {
+      int current = pins.get();
+      if (current < 0) {
+        return false;
+      }
+      if (pins.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void unpin() {
+    lastUsedNanos = System.nanoTime();
+    pins.decrementAndGet();
+  }
+
+  /** Claims unused handle for closing, so it can't be pinned */
+  boolean tryClaim() {
+    return pins.compareAndSet(0, -1);
+  }
+
+  void unclaim() {
+    pins.set(0);
+  }
+
+  IndexWriter getWriter() {
+    if (writer != null && writer.isOpen()) {
+      return writer;
+    } else {
+      throw new IllegalStateException("Index writer not opened for " + index);
+    }
+  }
+
+  boolean isNrt() {
+    return indexConfig.isNrt();
+  }
+
+  /**
+   * Opens searcher first time, later reopens it only if index has changed. Searches don't wait for refresh, they use previous
+   * searcher until new one is published. Old searcher is closed when released by all users
+   */
+  @SneakyThrows(IOException.class)
+  void openSearcher() {
+    getSearcherManager().maybeRefreshBlocking();
+  }
+
+  /** Lock free acquire of current searcher. Lease must be closed, preferably with try-with-resources */
+  @SneakyThrows(IOException.class)
+  SearcherLease acquireSearcher() {
+    ReferenceManager<IndexSearcher> manager = getSearcherManager();
+    //lease keeps handle pinned after the operation which acquired it
+    pins.incrementAndGet();
+    try {
+      return new SearcherLease(manager, manager.acquire(), this::unpin);
+    } catch (RuntimeException | IOException e) {
+      unpin();
+      throw e;
+    }
+  }
+
+  /** Searcher of replica, acquired like searcher of the index */
+  @SneakyThrows(IOException.class)
+  SearcherLease acquireReplicaSearcher() {
+    SearcherManager manager = getReplica().getSearcherManager();
+    pins.incrementAndGet();
+    try {
+      return new SearcherLease(manager, manager.acquire(), this::unpin);
+    } catch (RuntimeException | IOException e) {
+      unpin();
+      throw e;
+    }
+  }
+
+  BackupResult syncReplica() {
+    BackupResult result = getReplica().sync(snapshotPolicy);
+    deleteUnusedFiles();
+    return result;
+  }
+
+  /** Copies snapshot of the latest commit into destination, see {@link IndexCopier} */
+  @SneakyThrows(IOException.class)
+  BackupResult backup(Path destination) {
+    IndexCommit commit = snapshotPolicy.snapshot();
+    try (Directory destinationDirectory = FSDirectory.open(destination)) {
+      BackupResult result = IndexCopier.copy(index, commit, destinationDirectory);
+      IndexCopier.deleteStaleFiles(commit, destinationDirectory);
+      return result;
+    } finally {
+      snapshotPolicy.release(commit);
+      deleteUnusedFiles();
+    }
+  }
+
+  private IndexReplica getReplica() {
+    if (replica == null) {
+      throw new IllegalStateException("Replica is not configured for " + index);
+    }
+    return replica;
+  }
+
+  private void syncReplicaQuietly() {
+    try {
+      syncReplica();
+    } catch (RuntimeException e) {
+      log.warn("Replica sync of {} failed", index, e);
+    }
+  }
+
+  /** Commits which were protected by released snapshot are deleted now, instead of on the next commit */
+  @SneakyThrows(IOException.class)
+  private void deleteUnusedFiles() {
+    IndexWriter indexWriter = writer;
+    if (indexWriter != null && indexWriter.isOpen()) {
+      indexWriter.deleteUnusedFiles();
+    }
+  }
+
+  /** Id lookup of calling thread, prepared for the leased reader */
+  IdLookup idLookup(SearcherLease lease, String idField) {
+    Map<String, IdLookup> lookups = idLookups.get();
+    if (lookups == null) {
+      lookups = new HashMap<>();
+      idLookups.set(lookups);
+    }
+    IdLookup idLookup = lookups.computeIfAbsent(idField, IdLookup::new);
+    idLookup.setReader(lease.getReader());
+    return idLookup;
+  }
+
+  /**
+   * Waits until searcher sees all changes up to generation returned from writer operations. Only for NRT indexes. Fails if searcher
+   * is closed meanwhile, because generation is valid only for the reopen thread of the searcher it was returned for.
+   */
+  void waitForGeneration(long generation) throws InterruptedException {
+    if (!isNrt()) {
+      throw new IllegalStateException("Waiting for generation is possible only in NRT mode, for " + index);
+    }
+    getSearcherManager();
+    ControlledRealTimeReopenThread<IndexSearcher> thread;
+    synchronized (this) {
+      thread = reopenThread;
+    }
+    if (thread == null) {
+      throw new IllegalStateException("Searcher of " + index + " was closed, generation " + generation + " can't be awaited");
+    }
+    thread.waitForGeneration(generation);
+  }
+
+  private ReferenceManager<IndexSearcher> getSearcherManager() {
+    ReferenceManager<IndexSearcher> manager = searcherManager;
+    if (manager == null) {
+      boolean created = false;
+      synchronized (this) {
+        if (searcherManager == null) {
+          createSearcherManager();
+          created = true;
+        }
+        manager = searcherManager;
+      }
+      //outside of lock, listener can close searchers of other handles
+      if (created && searcherOpenedListener != null) {
+        searcherOpenedListener.run();
+      }
+    }
+    return manager;
+  }
+
+  @SneakyThrows(IOException.class)
+  private void createSearcherManager() {
+    SearcherFactory searcherFactory = new SlicingSearcherFactory();
+    ReferenceManager<IndexSearcher> manager;
+    if (isNrt()) {
+      manager = new SearcherManager(getWriter(), true, false, searcherFactory);
+      reopenThread = new ControlledRealTimeReopenThread<>(writer, manager, indexConfig.getNrtMaxStaleMillis() / 1000.0,
+          indexConfig.getNrtMinStaleMillis() / 1000.0);
+      reopenThread.setName("NRT reopen " + index.getName());
+      reopenThread.setDaemon(true);
+      reopenThread.start();
+    } else {
+      DirectoryReader reader = DirectoryReader.open(directory);
+      //readers opened from writer hide soft deleted documents by themselves
+      String softDeletesField = indexConfig.getSoftDeletesField();
+      manager = new SearcherManager(softDeletesField == null ? reader : new SoftDeletesDirectoryReaderWrapper(reader, softDeletesField),
+          searcherFactory);
+    }
+    if (resultCache != null) {
+      manager.addListener(new ReferenceManager.RefreshListener() {
+        @Override
+        public void beforeRefresh() {
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) {
+          if (didRefresh) {
+            resultCache.clear();
+          }
+        }
+      });
+    }
+    if (metricsListener != LuceneMetricsListener.NO_OP) {
+      manager.addListener(new ReferenceManager.RefreshListener() {
+        //refreshes of one manager are serialized
+        private long start;
+
+        @Override
+        public void beforeRefresh() {
+          start = System.nanoTime();
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) {
+          if (didRefresh) {
+            metricsListener.refreshed(index, System.nanoTime() - start);
+          }
+        }
+      });
+    }
+    //published last, so lock free readers see fully created manager
+    searcherManager = manager;
+  }
+
+  /**
+   * Searchers with slice executor search one query over groups of segments in parallel. Warm-up queries run on each new searcher
+   * before it is published, so first searches don't pay for cold caches.
+   */
+  private class SlicingSearcherFactory extends SearcherFactory {
+    @Override
+    @SneakyThrows(IOException.class)
+    public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+      IndexSearcher searcher = createSearcher(reader);
+      searcher.setQueryCache(queryCache);
+      if (queryCachingPolicy != null) {
+        searcher.setQueryCachingPolicy(queryCachingPolicy);
+      }
+      long start = System.nanoTime();
+      for (Query query : indexConfig.getWarmupQueries()) {
+        searcher.search(query, 10);
+      }
+      lastWarmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      if (metricsListener != LuceneMetricsListener.NO_OP) {
+        IndexWriter.DocStats docStats = writer.getDocStats();
+        metricsListener.segmentsChanged(index, reader.leaves().size(), writer.ramBytesUsed(), docStats.maxDoc - docStats.numDocs);
+      }
+      return searcher;
+    }
+
+    private IndexSearcher createSearcher(IndexReader reader) {
+      ExecutorService sliceExecutor = indexConfig.getSliceExecutor();
+      if (sliceExecutor == null) {
+        return new IndexSearcher(reader);
+      }
+      int maxDocsPerSlice = indexConfig.getMaxDocsPerSlice();
+      int maxSegmentsPerSlice = indexConfig.getMaxSegmentsPerSlice();
+      //anonymous class, so slicing settings are captured before IndexSearcher constructor calls slices()
+      return new IndexSearcher(reader, sliceExecutor) {
+        @Override
+        protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+          return groupSlices(leaves, maxDocsPerSlice, maxSegmentsPerSlice);
+        }
+      };
+    }
+  }
+
+  /**
+   * Largest segments first. Segment bigger than max docs is a slice on its own, smaller ones are grouped until slice reaches max docs
+   * or max segments.
+   */
+  static IndexSearcher.LeafSlice[] groupSlices(List<LeafReaderContext> leaves, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+    List<LeafReaderContext> sortedLeaves = new ArrayList<>(leaves);
+    sortedLeaves.sort(Comparator.comparingInt((LeafReaderContext leaf) -> leaf.reader().maxDoc()).reversed());
+    List<IndexSearcher.LeafSlice> slices = new ArrayList<>();
+    List<LeafReaderContext> group = new ArrayList<>();
+    long groupDocs = 0;
+    for (LeafReaderContext leaf : sortedLeaves) {
+      if (leaf.reader().maxDoc() > maxDocsPerSlice) {
+        slices.add(new IndexSearcher.LeafSlice(leaf));
+        continue;
+      }
+      group.add(leaf);
+      groupDocs += leaf.reader().maxDoc();
+      if (groupDocs > maxDocsPerSlice || group.size() >= maxSegmentsPerSlice) {
+        slices.add(new IndexSearcher.LeafSlice(group.toArray(new LeafReaderContext[0])));
+        group.clear();
+        groupDocs = 0;
+      }
+    }
+    if (!group.isEmpty()) {
+      slices.add(new IndexSearcher.LeafSlice(group.toArray(new LeafReaderContext[0])));
+    }
+    return slices.toArray(new IndexSearcher.LeafSlice[0]);
+  }
+
+  @SneakyThrows(IOException.class)
+  private IndexWriter openWriter(IndexWriterConfig iwConfig) {
+    snapshotPolicy = new SnapshotDeletionPolicy(iwConfig.getIndexDeletionPolicy());
+    iwConfig.setIndexDeletionPolicy(snapshotPolicy);
+    writer = new IndexWriter(directory, iwConfig);
+    writer.commit();
+    return writer;
+  }
+
+}
@@ -0,0 +1,258 @@
+package com.komante.lucene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Registered indexes and their handles. Handle can be opened on first use, and it is closed when idle, or when limit of open writers
+ * or readers is reached, least recently used first. Operations pin the handle, so it is never closed while in use. Handles of in-memory
+ * indexes are never closed, because their data would be lost.
+ */
+@Slf4j
+class IndexRegistry {
+
+    /** Opens handle of registered index */
+    interface HandleOpener {
+        IndexHandle open(Index index, Analyzer analyzer, boolean recreate);
+    }
+
+    private final Map<Index, Entry> entries = new ConcurrentHashMap<>();
+    private final HandleOpener opener;
+    private final int maxOpenWriters;
+    private final int maxOpenReaders;
+    private final long idleTimeoutMillis;
+    /** Own thread for idle checks and retiring handles, so closing a handle never blocks a commit thread */
+    private final ScheduledExecutorService executor;
+    /** Replaced handles, waiting for their operations to finish */
+    private final Set<IndexHandle> retiring = ConcurrentHashMap.newKeySet();
+
+    IndexRegistry(HandleOpener opener, LuceneConfig luceneConfig) {
+        this.opener = opener;
+        maxOpenWriters = luceneConfig.getMaxOpenWriters();
+        maxOpenReaders = luceneConfig.getMaxOpenReaders();
+        idleTimeoutMillis = luceneConfig.getIdleTimeoutMillis();
+        executor = Executors.newSingleThreadScheduledExecutor(DefaultLuceneManager.daemonThreadFactory("lucene-registry-"));
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(idleTimeoutMillis / 2, 10);
+            executor.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds index to the registry.
+     * @param recreate applies only to the first opening, reopened handles append to the index
+     * @param lazy     opens the handle on first use, instead of now
+     */
+    void register(Index index, Analyzer analyzer, boolean recreate, boolean lazy) {
+        Entry entry = new Entry(index, analyzer, recreate);
+        if (entries.putIfAbsent(index, entry) != null) {
+            throw new IllegalStateException("Index already present in index handles:" + index);
+        }
+        if (!lazy) {
+            pin(index).close();
+        }
+    }
+
+    /** Handle of the index, opened if needed, and pinned until returned object is closed */
+    PinnedHandle pin(Index index) {
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            throw new IllegalStateException("Index doesn't exist in indexHandles:" + index);
+        }
+        while (true) {
+            IndexHandle handle = entry.handle;
+            if (handle != null && handle.tryPin()) {
+                return new PinnedHandle(handle);
+            }
+            if (handle == null) {
+                closeLeastRecentlyUsed(maxOpenWriters, false);
+            }
+            //waits if handle is being closed
+            synchronized (entry) {
+                if (entry.handle == null) {
+                    open(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces handle of the index with new one, which opens current directory of the index with new analyzer. Old handle stays usable
+     * for operations which already pinned it, and it is closed after the last of them, then afterRetire runs.
+     */
+    void swap(Index index, Analyzer analyzer, Runnable afterRetire) {
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            throw new IllegalStateException("Index doesn't exist in indexHandles:" + index);
+        }
+        IndexHandle old;
+        synchronized (entry) {
+            old = entry.handle;
+            entry.analyzer = analyzer;
+            entry.recreate = false;
+            //new handle is published in place of the old one, so pinning never sees a closed index
+            open(entry);
+        }
+        if (old == null) {
+            afterRetire.run();
+        } else {
+            retiring.add(old);
+            retire(index, old, afterRetire);
+        }
+    }
+
+    private void retire(Index index, IndexHandle handle, Runnable afterRetire) {
+        if (!retiring.contains(handle)) {
+            return;
+        }
+        if (!handle.tryClaim()) {
+            executor.schedule(() -> retire(index, handle, afterRetire), 10, TimeUnit.MILLISECONDS);
+            return;
+        }
+        log.debug("Closing replaced handle of {}", index);
+        retiring.remove(handle);
+        handle.closeResources();
+        afterRetire.run();
+    }
+
+    /** Indexes which have open handle */
+    List<Index> getOpenIndexes() {
+        return entries.values().stream().filter(entry -> entry.handle != null).map(entry -> entry.index).collect(Collectors.toList());
+    }
+
+    /** Closes all handles, even if they are in use */
+    void close() {
+        executor.shutdown();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.handle != null) {
+                    entry.handle.closeResources();
+                    entry.handle = null;
+                }
+            }
+        }
+        for (IndexHandle handle : retiring) {
+            if (retiring.remove(handle)) {
+                handle.closeResources();
+            }
+        }
+    }
+
+    private void open(Entry entry) {
+        log.debug("Opening handle of {}", entry.index);
+        IndexHandle handle = opener.open(entry.index, entry.analyzer, entry.recreate);
+        entry.recreate = false;
+        handle.setSearcherOpenedListener(() -> closeLeastRecentlyUsed(maxOpenReaders, true));
+        entry.handle = handle;
+    }
+
+    /**
+     * When limit is reached, closes unused handles, or only their readers, least recently used first. Limit can be exceeded if all
+     * handles are in use.
+     */
+    private void closeLeastRecentlyUsed(int limit, boolean readersOnly) {
+        if (limit <= 0) {
+            return;
+        }
+        List<Entry> open = new ArrayList<>();
+        //last use is read once, because it changes while sorting
+        Map<Entry, Long> lastUsed = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            IndexHandle handle = entry.handle;
+            if (handle != null && (!readersOnly || handle.isSearcherOpen())) {
+                open.add(entry);
+                lastUsed.put(entry, handle.getLastUsedNanos());
+            }
+        }
+        open.sort(Comparator.comparing(lastUsed::get));
+        //one slot for handle or reader being opened
+        int toClose = open.size() - limit + (readersOnly ? 0 : 1);
+        for (int i = 0; i < open.size() && toClose > 0; i++) {
+            if (tryClose(open.get(i), readersOnly)) {
+                toClose--;
+            }
+        }
+        if (toClose > 0) {
+            log.warn("Limit of {} open {} exceeded, all are in use", limit, readersOnly ? "readers" : "writers");
+        }
+    }
+
+    private void closeIdle() {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        for (Entry entry : entries.values()) {
+            IndexHandle handle = entry.handle;
+            if (handle != null && handle.getLastUsedNanos() < idleSince) {
+                tryClose(entry, false);
+            }
+        }
+    }
+
+    private boolean tryClose(Entry entry, boolean readerOnly) {
+        synchronized (entry) {
+            IndexHandle handle = entry.handle;
+            if (handle == null || handle.isInMemory() || !handle.tryClaim()) {
+                return false;
+            }
+            if (readerOnly) {
+                log.debug("Closing reader of {}", entry.index);
+                try {
+                    handle.closeSearcher();
+                } finally {
+                    handle.unclaim();
+                }
+            } else {
+                log.debug("Closing handle of {}", entry.index);
+                entry.handle = null;
+                handle.closeResources();
+            }
+            return true;
+        }
+    }
+
+    private static class Entry {
+        private final Index index;
+        private Analyzer analyzer;
+        private boolean recreate;
+        private volatile IndexHandle handle;
+
+        Entry(Index index, Analyzer analyzer, boolean recreate) {
+            this.index = index;
+            this.analyzer = analyzer;
+            this.recreate = recreate;
+        }
+    }
+
+    /** Handle pinned for one operation. Use in try-with-resources */
+    static class PinnedHandle implements AutoCloseable {
+        private final IndexHandle handle;
+        private boolean released;
+
+        PinnedHandle(IndexHandle handle) {
+            this.handle = handle;
+        }
+
+        IndexHandle getHandle() {
+            return handle;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                handle.unpin();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.SoftDeletesDirectoryReaderWrapper;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Read only copy of an index in another local directory, synced to the latest commit of the primary index, with its own searcher. Heavy
+ * queries on the replica don't compete with primary's searcher for its caches, and replica can be used to restore the index.
+ */
+@Slf4j
+class IndexReplica {
+
+    private final Index index;
+    private final Directory directory;
+    /** Soft deletes are applied by reader of the replica, there is no writer */
+    private final String softDeletesField;
+    private volatile SearcherManager searcherManager;
+    private long syncedGeneration = -1;
+
+    @SneakyThrows(IOException.class)
+    IndexReplica(Index index, Path path, String softDeletesField) {
+        this.index = index;
+        this.directory = FSDirectory.open(path);
+        this.softDeletesField = softDeletesField;
+    }
+
+    /**
+     * Copies the latest commit, if it is newer than the synced one, and refreshes searcher. Commit is snapshotted, so primary can commit
+     * and merge meanwhile
+     * @return result of the copy, without copied files if replica is up to date
+     */
+    @SneakyThrows(IOException.class)
+    synchronized BackupResult sync(SnapshotDeletionPolicy snapshotPolicy) {
+        IndexCommit commit = snapshotPolicy.snapshot();
+        try {
+            if (commit.getGeneration() == syncedGeneration) {
+                return new BackupResult(index, syncedGeneration, 0, 0, commit.getFileNames().size(), 0);
+            }
+            BackupResult result = IndexCopier.copy(index, commit, directory);
+            if (searcherManager == null) {
+                DirectoryReader reader = DirectoryReader.open(directory);
+                searcherManager = new SearcherManager(softDeletesField == null ? reader :
+                    new SoftDeletesDirectoryReaderWrapper(reader, softDeletesField), null);
+            } else {
+                searcherManager.maybeRefreshBlocking();
+            }
+            syncedGeneration = commit.getGeneration();
+            //files of the previous commit are deleted after searcher doesn't need them
+            IndexCopier.deleteStaleFiles(commit, directory);
+            log.debug("Synced replica of {}: {}", index, result);
+            return result;
+        } finally {
+            snapshotPolicy.release(commit);
+        }
+    }
+
+    /** Searcher of the replica, which has to be released to the returned manager. Throws IllegalStateException before the first sync */
+    SearcherManager getSearcherManager() {
+        SearcherManager manager = searcherManager;
+        if (manager == null) {
+            throw new IllegalStateException("Replica of " + index + " is not synced yet");
+        }
+        return manager;
+    }
+
+    @SneakyThrows(IOException.class)
+    synchronized void close() {
+        if (searcherManager != null) {
+            searcherManager.close();
+        }
+        directory.close();
+    }
+}
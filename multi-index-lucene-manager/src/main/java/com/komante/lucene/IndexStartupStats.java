@@ -0,0 +1,19 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Timing of opening one index at startup */
+@Getter
+@AllArgsConstructor
+@ToString
+public class IndexStartupStats {
+    private Index index;
+    /** Opening of IndexWriter, including initial commit */
+    private long writerOpenMillis;
+    /** Opening of the first searcher, including warm-up. 0 for lazily opened indexes */
+    private long searcherOpenMillis;
+    /** Warm-up queries, part of searcher opening */
+    private long warmupMillis;
+}
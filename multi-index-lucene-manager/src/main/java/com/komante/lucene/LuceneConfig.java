@@ -0,0 +1,246 @@
+package com.komante.lucene;
+
+import lombok.*;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public class LuceneConfig {
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    @Builder(toBuilder = true)
+    @ToString
+    public static class HighlightsConfig {
+        public static class HighlightsConfigBuilder {
+        }
+
+        private int fragmentSizeChars = 240;
+        /** Max number of fragments per document */
+        private int numberOfDocumentFragments = 12;
+        /** Highlighted fields. Highlighter and custom highlights use only the first one */
+        private List<String> fields = List.of("content");
+        /** Page highlights of different segments are made in parallel, on search executor */
+        private boolean parallel = false;
+    }
+
+    /** Settings of one index. Indexes without their own config use default index config */
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    @Builder(toBuilder = true)
+    @ToString
+    public static class IndexConfig {
+        public static class IndexConfigBuilder {
+        }
+
+        /** Near-real-time mode. Searcher is opened from IndexWriter, so changes are visible on refresh without commit */
+        private boolean nrt = false;
+        /** NRT only. Max time before background thread refreshes searcher, when nobody waits for a generation */
+        private long nrtMaxStaleMillis = 1000;
+        /** NRT only. Min time between refreshes, when some thread waits for a generation */
+        private long nrtMinStaleMillis = 25;
+        /** Executor for searching segment slices of one query in parallel. Null searches all segments on caller thread */
+        private ExecutorService sliceExecutor;
+        /** Slicing policy, with slice executor. Segments are grouped into slice until it reaches max docs or max segments */
+        private int maxDocsPerSlice = 250_000;
+        private int maxSegmentsPerSlice = 5;
+        /** IndexWriter RAM buffer. Bigger buffer flushes bigger segments, but needs more heap */
+        private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+        /** Flushes segment after this many buffered documents, -1 flushes only by RAM usage */
+        private int maxBufferedDocs = IndexWriterConfig.DISABLE_AUTO_FLUSH;
+        /** Bulk indexing threads, which convert entities and add documents to shared IndexWriter */
+        private int bulkIndexThreads = Runtime.getRuntime().availableProcessors();
+        /** Max entities waiting for bulk indexing threads. When queue is full, producer waits */
+        private int bulkIndexQueueSize = 1000;
+        /** Automatic commits, in addition to explicit ones */
+        private CommitPolicy commitPolicy = CommitPolicy.ON_DEMAND;
+        /** For EVERY_N_DOCS commit policy */
+        private int commitEveryDocs = 1000;
+        /** For EVERY_T_MILLIS commit policy */
+        private long commitIntervalMillis = 1000;
+        /** Max terms with cached global statistics, per reader generation. 0 disables the cache */
+        private int termStatsCacheSize = 100_000;
+        /** How index does I/O */
+        private DirectoryType directoryType = DirectoryType.FS_DEFAULT;
+        /** NRT_CACHING only. Flushed or merged segments up to this size are kept in heap */
+        private double nrtCachingMaxMergeSizeMB = 5;
+        /** NRT_CACHING only. Max heap used by all cached segments */
+        private double nrtCachingMaxCachedMB = 60;
+        /** BYTE_BUFFERS only. Copies existing index from index directory into heap when index is opened */
+        private boolean loadFromDisk = false;
+        /** Searched on each new searcher before it is published, to load index structures and caches */
+        private List<Query> warmupQueries = List.of();
+        /** Max cached search results, dropped when searcher is refreshed. 0 disables result cache */
+        private int resultCacheMaxEntries = 0;
+        /** Max approximate heap of cached search results */
+        private long resultCacheMaxBytes = 16 * 1024 * 1024;
+        /** Tiered merge policy. Natural merges don't produce bigger segments, only force merge does */
+        private double maxMergedSegmentMB = 5 * 1024;
+        /** Tiered merge policy. Segments allowed per size tier, lower value merges more often and searches fewer segments */
+        private double segmentsPerTier = 10;
+        /** Tiered merge policy. Smaller segments are treated as this size, so tiny flushed segments are merged aggressively */
+        private double floorSegmentMB = 2;
+        /** Tiered merge policy. Allowed percentage of deleted documents in the index, from 20 to 50, before deletes are merged away */
+        private double deletesPctAllowed = 33;
+        /** forceMergeDeletes merges only segments with higher percentage of deleted documents */
+        private double forceMergeDeletesPctAllowed = 10;
+        /** Concurrently running merges. Set together with max merge count, -1 for both detects them from disk type and CPUs */
+        private int maxMergeThreads = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+        /** Pending merges before indexing threads are stalled, at least max merge threads */
+        private int maxMergeCount = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+        /** Adaptive IO rate limit of natural merges, so they compete less with searches. Forced merges are never throttled */
+        private boolean mergeIoThrottle = true;
+        /** Daily maintenance window start, local time. Null disables scheduled maintenance */
+        private LocalTime maintenanceStart;
+        /** Maintenance which can't start within this time from window start is skipped until the next day */
+        private long maintenanceWindowMinutes = 60;
+        /** Maintenance force merges to this many segments. 0 only merges away deleted documents */
+        private int maintenanceMaxSegments = 0;
+        /** AsyncLuceneManager. Threads for searches and highlights */
+        private int asyncReadThreads = Runtime.getRuntime().availableProcessors();
+        /** AsyncLuceneManager. Reads waiting for a thread, more are rejected */
+        private int asyncReadQueueSize = 1000;
+        /** AsyncLuceneManager. Threads for indexing, deletes, commits and refreshes */
+        private int asyncWriteThreads = 2;
+        /** AsyncLuceneManager. Writes waiting for a thread, more are rejected */
+        private int asyncWriteQueueSize = 1000;
+        /**
+         * DocValues field which marks documents replaced by upsert, instead of deleting them. Refresh doesn't have to apply deletes,
+         * merges drop marked documents. Null uses hard deletes. Can't be changed for existing index
+         */
+        private String softDeletesField;
+        /** ShardedLuceneManager. Number of shards, each with its own directory, writer and searcher. Can't be changed for existing index */
+        private int shards = 1;
+        /** ShardedLuceneManager. Documents are routed to shards by hash of value of this field */
+        private String shardKeyField = "id";
+        /** Reindex. RAM buffer of writer of new generation, bigger than usual, because it is used only once */
+        private double reindexRamBufferSizeMB = 256;
+        /** Reindex. New generation is force merged to this many segments before switch. 0 doesn't merge */
+        private int reindexMaxSegments = 0;
+        /** Directory of read only replicas, each index in subdirectory by its name. Null doesn't keep replica */
+        private String replicaLocation;
+        /** How often replica is synced to the latest commit */
+        private long replicaSyncMillis = 1000;
+    }
+
+
+    public static HighlightsConfig.HighlightsConfigBuilder highlightsConfigBuilder() {
+        return new HighlightsConfig().toBuilder();
+    }
+
+    public static IndexConfig.IndexConfigBuilder indexConfigBuilder() {
+        return new IndexConfig().toBuilder();
+    }
+
+    /** For IndexSearcher.search() methods. Default result size */
+    private int maxSearchSize = 10000;
+
+    /** Directory where all the indices will be stored (in their own directories) */
+    private final String indexLocation;
+
+    /** Should all indexes be recreated, unless parameter not overriden on index level. Deletes all index data!! */
+    private final boolean recreateIndexes;
+
+    private HighlightsConfig highlightsConfig;
+
+    /** Executor for searches over multiple indexes. If not set, manager creates its own pool with searchThreads */
+    private ExecutorService searchExecutor;
+
+    /** Size of manager's search pool, when searchExecutor is not set */
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Threads of ShardedLuceneManager, which index, commit and refresh shards in parallel */
+    private int shardThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Threads shared by bulk indexing of all indexes, each bulk index uses at most bulkIndexThreads of its index */
+    private int bulkThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Threads shared by all indexes for scheduled and requested commits */
+    private int commitThreads = 2;
+
+    /** Threads shared by all indexes for syncing replicas, so copying files doesn't delay commits */
+    private int replicaThreads = 1;
+
+    /** Used for all indexes not present in indexConfigs */
+    private IndexConfig defaultIndexConfig;
+
+    /** Index specific settings, by index name */
+    private Map<String, IndexConfig> indexConfigs;
+
+    /** Lucene's cache of filter clauses, shared by all indexes. 0 disables it */
+    private int queryCacheMaxEntries = 1000;
+
+    /** Max heap of Lucene's cache of filter clauses */
+    private long queryCacheMaxRamMB = 32;
+
+    /** Decides which filter clauses are cached. Null uses Lucene's UsageTrackingQueryCachingPolicy */
+    private QueryCachingPolicy queryCachingPolicy;
+
+    /** Receives timings and counts of all operations */
+    private LuceneMetricsListener metricsListener = LuceneMetricsListener.NO_OP;
+
+    /** Indexes are opened on first use, instead of in openIndex */
+    private boolean lazyOpenIndexes = false;
+
+    /** Max indexes with open writer. Least recently used unused index is closed when limit is reached. 0 is unlimited */
+    private int maxOpenWriters = 0;
+
+    /** Max indexes with open searcher. Least recently used unused searcher is closed when limit is reached. 0 is unlimited */
+    private int maxOpenReaders = 0;
+
+    /** Indexes unused for this long are closed, and reopened on next use. 0 keeps them open */
+    private long idleTimeoutMillis = 0;
+
+    public LuceneConfig(@NonNull String indexLocation, boolean recreateIndexes) {
+        this.indexLocation = indexLocation;
+        this.recreateIndexes = recreateIndexes;
+        highlightsConfig = new HighlightsConfig();
+        defaultIndexConfig = new IndexConfig();
+        indexConfigs = new HashMap<>();
+    }
+
+    /** Shards have settings of their logical index */
+    public IndexConfig getIndexConfig(Index index) {
+        return indexConfigs.getOrDefault(index.getLogicalIndex().getName(), defaultIndexConfig);
+    }
+
+    @Builder(toBuilder = true)
+    private LuceneConfig optionals(int maxSearchSize, HighlightsConfig highlightsConfig, ExecutorService searchExecutor, int searchThreads,
+                                   int commitThreads, IndexConfig defaultIndexConfig, Map<String, IndexConfig> indexConfigs,
+                                   int queryCacheMaxEntries, long queryCacheMaxRamMB, QueryCachingPolicy queryCachingPolicy,
+                                   LuceneMetricsListener metricsListener, boolean lazyOpenIndexes, int maxOpenWriters,
+                                   int maxOpenReaders, long idleTimeoutMillis, int shardThreads, int bulkThreads,
+                                   int replicaThreads) {
+        this.maxSearchSize = maxSearchSize;
+        this.highlightsConfig = highlightsConfig;
+        this.searchExecutor = searchExecutor;
+        this.searchThreads = searchThreads;
+        this.commitThreads = commitThreads;
+        this.defaultIndexConfig = defaultIndexConfig;
+        this.indexConfigs = new HashMap<>(indexConfigs);
+        this.queryCacheMaxEntries = queryCacheMaxEntries;
+        this.queryCacheMaxRamMB = queryCacheMaxRamMB;
+        this.queryCachingPolicy = queryCachingPolicy;
+        this.metricsListener = metricsListener;
+        this.lazyOpenIndexes = lazyOpenIndexes;
+        this.maxOpenWriters = maxOpenWriters;
+        this.maxOpenReaders = maxOpenReaders;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.shardThreads = shardThreads;
+        this.bulkThreads = bulkThreads;
+        this.replicaThreads = replicaThreads;
+        return this;
+    }
+}
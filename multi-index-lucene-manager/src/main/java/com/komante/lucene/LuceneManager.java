@@ -0,0 +1,242 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.highlight.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Main entry point to MILManager operations.
+ * Holds map of index handles, one per index. And uses them to do index/search operations. Clients access this service, not indexHandles
+ * directly.
+ */
+
+public interface LuceneManager {
+
+    /** Closes writers and readers */
+    void closeLuceneResources();
+
+    /** Overloaded method, uses predefined recreate option */
+    void openIndex(Index index, Analyzer analyzer);
+
+    /**
+     * Registers index. Its writer is opened now, or on first use with lazyOpenIndexes. Unused indexes can be closed by configured limits
+     * and reopened on next use, so recreate applies only to the first opening
+     */
+    void openIndex(Index index, Analyzer analyzer, boolean recreate);
+
+    /**
+     * Opens indexes in parallel, each with its first searcher, on which configured warm-up queries run. With lazyOpenIndexes, indexes
+     * are only registered
+     * @return timing of opening, per index
+     */
+    List<IndexStartupStats> openIndexes(Map<Index, Analyzer> analyzers);
+
+    /** Hits, misses and evictions of result cache of the index. Throws IllegalStateException if result cache is not enabled */
+    ResultCacheStats getResultCacheStats(Index index);
+
+    /**
+     * Commits, merges segments as configured by maintenance max segments, and commits merged segments. Runs in configured maintenance
+     * window, and can be called any time, e.g. after big deletes
+     */
+    MaintenanceReport runMaintenance(Index index);
+
+    /** Registered indexes which currently have open writer */
+    List<Index> getOpenIndexes();
+
+    /** @return generation of the change, which can be used to wait until it becomes visible in NRT index */
+    long indexDocument(Index index, Document document, boolean commit);
+
+    /** @return generation of the last added document, which can be used to wait until changes become visible in NRT index */
+    long indexDocuments(Index index, List<Document> documents, boolean commit);
+
+    /**
+     * Adds documents, or replaces existing documents with the same unique id. Old documents are deleted by id term, which is much
+     * cheaper than delete by query. Of documents with the same id in one batch, only the last one is indexed. With soft deletes field
+     * in IndexConfig, old documents are marked instead of deleted.
+     * @param idField indexed, not tokenized field with unique id, e.g. StringField
+     * @return generation of the last change, which can be used to wait until changes become visible in NRT index
+     */
+    <T> long upsert(Index index, String idField, List<T> entities, DocumentConverter<T> documentConverter, boolean commit);
+
+    /** Commits all changes. Concurrent commit requests share one commit. @return generation of the last committed change */
+    long commit(Index index);
+
+    /**
+     * Future which completes when change with given generation, returned from indexing methods, is committed. Commit is made by commit
+     * policy of the index, or by explicit commit.
+     */
+    CompletableFuture<Long> whenDurable(Index index, long generation);
+
+    /**
+     * Converts and indexes entities on bulk indexing threads of the index, which share its IndexWriter. Entities are consumed from stream
+     * on calling thread, through bounded queue, so slow indexing slows down the producer.
+     */
+    <T> BulkIndexResult bulkIndex(Index index, Stream<T> entities, DocumentConverter<T> documentConverter, boolean commit);
+
+    /**
+     * Rebuilds index into its new generation, in sibling directory, while current generation keeps serving. Entities are indexed like in
+     * bulkIndex, with writer settings for throughput from IndexConfig, and committed. Then index is switched to the new generation, with
+     * new analyzer, and old generation is closed and deleted when operations which use it finish. Changes made to the index during
+     * reindex are not in the new generation.
+     */
+    <T> BulkIndexResult reindex(Index index, Analyzer analyzer, Stream<T> entities, DocumentConverter<T> documentConverter);
+
+    /** Reopens searcher, only if index has changed. In NRT mode uncommitted changes also become visible */
+    void refreshSearcher(Index index);
+
+    /**
+     * Blocks until searcher of NRT index sees all changes up to generation, returned by indexing methods. Waits at most for max
+     * staleness configured for the index.
+     */
+    void waitForGeneration(Index index, long generation);
+
+    /**
+     * Acquires current searcher of the index, for custom Lucene operations. Refreshes don't affect acquired searcher, and it has to be
+     * released by closing the lease, preferably with try-with-resources
+     */
+    SearcherLease acquireSearcher(Index index);
+
+    /**
+     * Hot backup of the latest commit into destination directory, while index keeps serving and indexing. Only files missing in
+     * destination are copied, so repeated backup into the same directory is incremental, and files of older commits are deleted from it
+     */
+    BackupResult backup(Index index, Path destination);
+
+    /**
+     * Acquires searcher of the read only replica of the index, configured by replicaLocation. Replica is synced to the latest commit
+     * periodically in background, starting right after opening, so it doesn't see uncommitted changes. Throws IllegalStateException
+     * until the first sync finishes, {@link #syncReplica} waits for it. Lease has to be closed like lease of {@link #acquireSearcher}
+     */
+    SearcherLease acquireReplicaSearcher(Index index);
+
+    /** Syncs replica to the latest commit now, instead of waiting for periodic sync */
+    BackupResult syncReplica(Index index);
+
+    /**Searches index without opening new searcher */
+    List<Document> search(Index index, Query query);
+
+    List<Document> search(Index index, Query query, boolean newSearcher);
+
+    /** Number of matching documents. Counts without scoring, or from index statistics when the query allows it */
+    int count(Index index, Query query);
+
+    /** Whether any document matches. Doesn't score, and stops at the first match */
+    boolean exists(Index index, Query query);
+
+    /** First page of hits. Loads only stored fields and DocValues requested in options */
+    SearchPage searchPage(Index index, Query query, SearchOptions options);
+
+    /**
+     * Next page of hits, after the cursor returned in previous page. Searcher refresh between pages can shift results, use
+     * {@link #searchStream(Index, Query, SearchOptions)} for consistent view over all pages.
+     */
+    SearchPage searchPage(Index index, Query query, SearchOptions options, ScoreDoc after);
+
+    /**
+     * Lazy stream over all hits, fetched page by page from one searcher. Stream holds the searcher until all hits are consumed or stream
+     * is closed, so it should be used in try-with-resources.
+     */
+    Stream<LuceneSearchHit> searchStream(Index index, Query query, SearchOptions options);
+
+    /** Top hits from all indexes, see {@link #searchPage(List, Query, SearchOptions, ScoreDoc)} */
+    SearchPage searchPage(Collection<Index> indexes, Query query, SearchOptions options);
+
+    /**
+     * Searches all indexes in parallel and merges their top hits into one page. Scores use statistics of all indexes, so they are
+     * comparable. Each hit has its index. Cursor from previous page is valid only for the same list of indexes, in the same order.
+     */
+    SearchPage searchPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after);
+
+    /**
+     * Term counts, range counts and stats of DocValues fields over all documents matching the query. Collected in one pass without
+     * loading stored documents, so they aren't limited by max search size
+     */
+    FacetResult facets(Index index, Query query, FacetRequest request);
+
+    /** Facets of matching documents of all indexes, counted together */
+    FacetResult facets(Collection<Index> indexes, Query query, FacetRequest request);
+
+    void deleteDocuments(Index index, Query query);
+
+    List<LuceneHighlightResult<Document>> getHighlights(Index index, Query query);
+
+    /** Top hits of all indexes up to max search size, scored with statistics of all indexes and merged by score */
+    List<LuceneHighlightResult<Document>> getHighlights(Collection<Index> indexes, Query query);
+
+    /**
+     * Page of hits, each with highlighted fragments of configured highlight fields. Uses offsets stored in postings or term vectors, and
+     * highlights only hits of the page, in one batch per segment.
+     * @param after cursor of previous page, null for the first page
+     */
+    SearchPage highlightPage(Index index, Query query, SearchOptions options, ScoreDoc after);
+
+    /** Highlighted page of all indexes, merged like {@link #searchPage(List, Query, SearchOptions, ScoreDoc)} */
+    SearchPage highlightPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after);
+
+    /**
+     * Full implementation of highlights without Lucene Highlighter and Fragmenter - which haven't produced satisfying results. Implemented
+     * with TokenStream, source text, and custom made sentence aware highlighter and fragmenter.
+     * @param query                  used to search for documents
+     * @param highlightTermPredicate used to determine term to highlight. Another form of query, to return boolean
+     */
+    List<LuceneHighlightResult<Document>> getCustomHighlights(Index index, Query query, Predicate<String> highlightTermPredicate);
+
+    /** Top hits of all indexes up to max search size, scored with statistics of all indexes and merged by score */
+    List<LuceneHighlightResult<Document>> getCustomHighlights(Collection<Index> indexes, Query query, Predicate<String> highlightTermPredicate);
+
+    /**
+     * Stored document with unique id. Id term is sought directly in each segment, without query and scoring. Throws
+     * IllegalStateException if more than one document has the id
+     */
+    Optional<Document> getDocumentById(Index index, String idField, String idValue);
+
+    /**
+     * Stored documents of many unique ids, found in one pass over segments. Documents are in order of ids, with null for ids which are
+     * not found
+     */
+    List<Document> getDocumentsByIds(Index index, String idField, List<String> idValues);
+
+    /**
+     * Document number of unique id in leased searcher of the index, or -1 if not found. Number is valid only for that searcher
+     * @param lease searcher acquired from the same index
+     */
+    int getDocumentNumber(Index index, SearcherLease lease, String idField, String idValue);
+
+    /**
+     * Returns data for each term in one document from one field
+     * @param index     document's index
+     * @param idField   for a document, with unique values
+     * @param idValue   of a document
+     * @param termField from where to take terms
+     */
+    List<TermVectorData> getDocumentTerms(Index index, String idField, String idValue, String termField, boolean includeOffsets);
+
+    /**
+     * Term data of many documents from one field, in columnar form. Global statistics of all distinct terms are read together, and
+     * cached until searcher is refreshed
+     * @return terms data in order of ids, null for ids which are not found or documents without term vector
+     */
+    List<DocumentTermsData> getDocumentsTerms(Index index, String idField, List<String> idValues, String termField,
+                                              boolean includeOffsets);
+}
@@ -0,0 +1,54 @@
+package com.komante.lucene;
+
+/**
+ * Receives timings and counts of LuceneManager operations, per index. Set it in LuceneConfig. Methods are called on the thread which did
+ * the operation, including commit and NRT refresh threads, so they must be fast and thread safe. All durations are in nanoseconds.
+ * Default methods ignore the event, and with {@link #NO_OP} manager doesn't even read the clock.
+ */
+public interface LuceneMetricsListener {
+
+    LuceneMetricsListener NO_OP = new LuceneMetricsListener() {
+    };
+
+    /** Documents added by indexDocument, indexDocuments or bulkIndex */
+    default void indexed(Index index, int documents, long nanos) {
+    }
+
+    /** Delete by query. Number of deleted documents is known only after flush, see pending deletes in {@link #segmentsChanged} */
+    default void deleted(Index index, long nanos) {
+    }
+
+    default void committed(Index index, long nanos) {
+    }
+
+    /** Searcher refresh which opened new searcher, explicit or by NRT thread, including warm-up */
+    default void refreshed(Index index, long nanos) {
+    }
+
+    /**
+     * Search operation, with its total hits. Results served from result cache are included.
+     * @param operation name of LuceneManager method
+     */
+    default void searched(Index index, String operation, long totalHits, long nanos) {
+    }
+
+    /**
+     * Highlighting of one search, split into search, loading of stored fields and fragmenting. Loading of term vectors or offsets is part
+     * of fragmenting.
+     */
+    default void highlighted(Index index, int documents, long searchNanos, long loadNanos, long fragmentNanos) {
+    }
+
+    /**
+     * State of the writer after new searcher was opened
+     * @param segments       segments of the new searcher
+     * @param writerRamBytes RAM used by buffered documents and deletes of the writer
+     * @param pendingDeletes deleted documents which still occupy segments, until they are merged away
+     */
+    default void segmentsChanged(Index index, int segments, long writerRamBytes, int pendingDeletes) {
+    }
+
+    /** Maintenance merge, with segments before and after */
+    default void maintained(MaintenanceReport report) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.komante.lucene;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.lucene.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/** One search hit. Document and DocValues are loaded only for fields requested in {@link SearchOptions} */
+@Getter
+@AllArgsConstructor
+@ToString
+public class LuceneSearchHit {
+    /** Index where the hit was found */
+    private Index index;
+    /** Lucene document number, valid only for the searcher which returned the hit */
+    private int docId;
+    /** NaN when search is sorted by fields and scores are not computed */
+    private float score;
+    /** Values of sort fields, null when sorted by relevance */
+    private Object[] sortValues;
+    /** Null when no stored fields are requested */
+    private Document document;
+    /** Requested DocValues, by field name. Missing values are not present */
+    private Map<String, Object> docValues;
+    /** Highlighted fragments by field, only for hits returned from page highlighting */
+    @Setter(AccessLevel.PACKAGE)
+    private Map<String, List<String>> highlights;
+}
@@ -0,0 +1,17 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Segments of one index before and after maintenance merge */
+@Getter
+@AllArgsConstructor
+@ToString
+public class MaintenanceReport {
+    private Index index;
+    private SegmentsSummary before;
+    private SegmentsSummary after;
+    /** Merge and both commits */
+    private long durationMillis;
+}
@@ -0,0 +1,71 @@
+package com.komante.lucene;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs maintenance of indexes once a day, in their configured window. Maintenance starts only while the window is open, so a run delayed
+ * by maintenance of other indexes is skipped until the next day. All indexes share one thread, so their merges don't compete.
+ */
+@Slf4j
+class MaintenanceScheduler {
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Consumer<Index> maintenance;
+    private final Clock clock;
+
+    MaintenanceScheduler(ThreadFactory threadFactory, Consumer<Index> maintenance, Clock clock) {
+        //thread is started with the first scheduled maintenance
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.maintenance = maintenance;
+        this.clock = clock;
+    }
+
+    void schedule(Index index, LocalTime windowStart, long windowMinutes) {
+        scheduleAt(index, nextStart(LocalDateTime.now(clock), windowStart), windowMinutes);
+    }
+
+    /** Cancels scheduled maintenance. Running one is not interrupted, closing of its writer waits for merges */
+    void close() {
+        executor.shutdown();
+    }
+
+    private void scheduleAt(Index index, LocalDateTime start, long windowMinutes) {
+        long delay = Math.max(0, Duration.between(LocalDateTime.now(clock), start).toMillis());
+        log.debug("Maintenance of {} scheduled at {}", index, start);
+        executor.schedule(() -> runInWindow(index, start, windowMinutes), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runInWindow(Index index, LocalDateTime start, long windowMinutes) {
+        try {
+            if (LocalDateTime.now(clock).isAfter(start.plusMinutes(windowMinutes))) {
+                log.warn("Maintenance of {} skipped, window which started at {} is closed", index, start);
+            } else {
+                maintenance.accept(index);
+            }
+        } catch (RuntimeException e) {
+            log.error("Maintenance of {} failed", index, e);
+        } finally {
+            if (!executor.isShutdown()) {
+                //wall clock can be slightly behind the executor, so next window is searched after this one
+                LocalDateTime now = LocalDateTime.now(clock);
+                scheduleAt(index, nextStart(now.isAfter(start) ? now : start, start.toLocalTime()), windowMinutes);
+            }
+        }
+    }
+
+    /** First start of the window after given time. Local date time follows daylight saving changes */
+    static LocalDateTime nextStart(LocalDateTime after, LocalTime windowStart) {
+        LocalDateTime next = after.toLocalDate().atTime(windowStart);
+        return next.isAfter(after) ? next : next.plusDays(1);
+    }
+}
@@ -0,0 +1,23 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Range of long values of a numeric DocValues field, from inclusive to exclusive */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class NumericRange {
+    private String field;
+    /** Key of the range count in facet result */
+    private String label;
+    private long from;
+    private long to;
+
+    boolean contains(long value) {
+        return value >= from && value < to;
+    }
+}
@@ -0,0 +1,21 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Aggregation of all values of a numeric DocValues field in matching documents */
+@Getter
+@AllArgsConstructor
+@ToString
+public class NumericStats {
+    /** Number of values, multi valued document contributes all its values */
+    private long count;
+    private long min;
+    private long max;
+    private long sum;
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,127 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.Passage;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Highlights page of hits with offsets from postings, or term vectors, and re-analyzes text only for fields indexed without offsets.
+ * Hits are highlighted in one batch per segment, and batches can run in parallel. Fragments are sentences close to fragment size.
+ */
+class OffsetsHighlighter {
+
+    private final IndexSearcher searcher;
+    private final Analyzer analyzer;
+    private final LuceneConfig.HighlightsConfig highlightsConfig;
+    private final ExecutorService executor;
+
+    /** @param executor for parallel segment batches, null highlights on caller thread */
+    OffsetsHighlighter(IndexSearcher searcher, Analyzer analyzer, LuceneConfig.HighlightsConfig highlightsConfig, ExecutorService executor) {
+        this.searcher = searcher;
+        this.analyzer = analyzer;
+        this.highlightsConfig = highlightsConfig;
+        this.executor = executor;
+    }
+
+    /** @return fragments by field for each doc, in the same order as docIds */
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    List<Map<String, List<String>>> highlight(Query query, int[] docIds) {
+        String[] fields = highlightsConfig.getFields().toArray(new String[0]);
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        Map<Integer, List<Integer>> positionsByLeaf = new TreeMap<>();
+        for (int i = 0; i < docIds.length; i++) {
+            positionsByLeaf.computeIfAbsent(ReaderUtil.subIndex(docIds[i], leaves), leaf -> new ArrayList<>()).add(i);
+        }
+        List<Map<String, List<String>>> highlights = new ArrayList<>(Collections.nCopies(docIds.length, null));
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<Integer> positions : positionsByLeaf.values()) {
+            if (executor == null) {
+                highlightBatch(query, fields, docIds, positions, highlights);
+            } else {
+                futures.add(executor.submit(() -> highlightBatch(query, fields, docIds, positions, highlights)));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return highlights;
+    }
+
+    @SneakyThrows(IOException.class)
+    @SuppressWarnings("unchecked")
+    private void highlightBatch(Query query, String[] fields, int[] docIds, List<Integer> positions,
+                                List<Map<String, List<String>>> highlights) {
+        int[] batchDocIds = positions.stream().mapToInt(i -> docIds[i]).toArray();
+        int[] maxPassages = new int[fields.length];
+        Arrays.fill(maxPassages, highlightsConfig.getNumberOfDocumentFragments());
+        Map<String, Object[]> fieldHighlights = new BatchHighlighter(searcher, analyzer).highlightFieldsAsObjects(fields, query, batchDocIds, maxPassages);
+        for (int i = 0; i < positions.size(); i++) {
+            Map<String, List<String>> docHighlights = new LinkedHashMap<>();
+            for (String field : fields) {
+                Object fragments = fieldHighlights.get(field)[i];
+                docHighlights.put(field, fragments == null ? Collections.emptyList() : (List<String>) fragments);
+            }
+            //each batch sets different positions
+            highlights.set(positions.get(i), docHighlights);
+        }
+    }
+
+    /** Exposes highlighting as objects, so every passage becomes one fragment */
+    private class BatchHighlighter extends UnifiedHighlighter {
+        BatchHighlighter(IndexSearcher searcher, Analyzer analyzer) {
+            super(searcher, analyzer);
+            setFormatter(new FragmentsFormatter());
+            setMaxNoHighlightPassages(0);
+            //passage starts at sentence start, not aligned around the match
+            setBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(BreakIterator.getSentenceInstance(Locale.ROOT),
+                highlightsConfig.getFragmentSizeChars(), 0f));
+        }
+
+        @Override
+        protected Map<String, Object[]> highlightFieldsAsObjects(String[] fields, Query query, int[] docIds, int[] maxPassagesIn)
+            throws IOException {
+            return super.highlightFieldsAsObjects(fields, query, docIds, maxPassagesIn);
+        }
+    }
+
+    /** Formats each passage as separate fragment, with matches between highlight tags */
+    private static class FragmentsFormatter extends PassageFormatter {
+        @Override
+        public Object format(Passage[] passages, String content) {
+            List<String> fragments = new ArrayList<>(passages.length);
+            for (Passage passage : passages) {
+                StringBuilder fragment = new StringBuilder();
+                int position = passage.getStartOffset();
+                for (int i = 0; i < passage.getNumMatches(); i++) {
+                    int start = passage.getMatchStarts()[i];
+                    int end = passage.getMatchEnds()[i];
+                    //overlapping matches are highlighted together
+                    while (i + 1 < passage.getNumMatches() && passage.getMatchStarts()[i + 1] < end) {
+                        end = Math.max(end, passage.getMatchEnds()[++i]);
+                    }
+                    end = Math.min(end, passage.getEndOffset());
+                    fragment.append(content, position, start).append(SentenceFragmenter.HIGHLIGHT_START_TAG)
+                        .append(content, start, end).append(SentenceFragmenter.HIGHLIGHT_END_TAG);
+                    position = end;
+                }
+                fragment.append(content, position, Math.max(position, passage.getEndOffset()));
+                fragments.add(fragment.toString().trim());
+            }
+            return fragments;
+        }
+    }
+}
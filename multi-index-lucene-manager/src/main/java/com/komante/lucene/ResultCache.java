@@ -0,0 +1,131 @@
+package com.komante.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Search results of one index. Keys contain the reader which produced the result, and all entries are dropped when searcher is
+ * refreshed. Least recently used entries are evicted when count or approximate size limit is reached. Cached results are shared
+ * between callers, and must not be modified.
+ */
+class ResultCache {
+
+    /** Approximate heap of an object, with its header and references */
+    private static final int OBJECT_BYTES = 32;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cached result, or result of the search, which is then cached. Concurrent misses of the same key may search more than once.
+     * @param key reader, operation and all its parameters
+     */
+    @SuppressWarnings("unchecked")
+    <R> R get(List<Object> key, Supplier<R> search) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return (R) entry.value;
+            }
+        }
+        misses.increment();
+        R result = search.get();
+        long resultBytes = estimateBytes(result) + estimateBytes(key);
+        if (resultBytes <= maxBytes) {
+            put(key, new Entry(result, resultBytes));
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized ResultCacheStats getStats() {
+        return new ResultCacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes);
+    }
+
+    private synchronized void put(List<Object> key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        bytes += entry.bytes - (previous != null ? previous.bytes : 0);
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= leastRecentlyUsed.next().bytes;
+            leastRecentlyUsed.remove();
+            evictions.increment();
+        }
+    }
+
+    /** Rough size of search results: strings, documents, hits and collections of them */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return OBJECT_BYTES + 2L * ((String) value).length();
+        } else if (value instanceof Collection) {
+            long size = OBJECT_BYTES;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateBytes(element);
+            }
+            return size;
+        } else if (value instanceof Map) {
+            long size = OBJECT_BYTES;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += OBJECT_BYTES + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Document) {
+            long size = OBJECT_BYTES;
+            for (IndexableField field : (Document) value) {
+                size += OBJECT_BYTES + estimateBytes(field.name()) + estimateBytes(field.stringValue());
+                if (field.binaryValue() != null) {
+                    size += field.binaryValue().length;
+                }
+            }
+            return size;
+        } else if (value instanceof SearchPage) {
+            return OBJECT_BYTES + estimateBytes(((SearchPage) value).getHits());
+        } else if (value instanceof LuceneSearchHit) {
+            LuceneSearchHit hit = (LuceneSearchHit) value;
+            return OBJECT_BYTES + estimateBytes(hit.getDocument()) + estimateBytes(hit.getDocValues()) + estimateBytes(hit.getHighlights());
+        } else if (value instanceof FacetResult) {
+            FacetResult result = (FacetResult) value;
+            return OBJECT_BYTES + estimateBytes(result.getTermCounts()) + estimateBytes(result.getRangeCounts())
+                    + estimateBytes(result.getStats());
+        } else if (value instanceof LuceneHighlightResult) {
+            LuceneHighlightResult<?> result = (LuceneHighlightResult<?>) value;
+            return OBJECT_BYTES + estimateBytes(result.getDocument()) + estimateBytes(result.getFragments());
+        }
+        return OBJECT_BYTES;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Counters of result cache of one index, since the index was opened */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ResultCacheStats {
+    private long hits;
+    private long misses;
+    private long evictions;
+    /** Current number of cached results */
+    private int entries;
+    /** Approximate heap used by cached results */
+    private long bytes;
+}
@@ -0,0 +1,44 @@
+package com.komante.lucene;
+
+import lombok.*;
+import org.apache.lucene.search.Sort;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Options for paged and streamed search. Default is page of 10 hits by relevance, with whole stored documents. Options with equal
+ * values are equal, so they can be part of result cache key
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder(toBuilder = true)
+@EqualsAndHashCode
+@ToString
+public class SearchOptions {
+    public static class SearchOptionsBuilder {
+    }
+
+    public static SearchOptionsBuilder searchOptionsBuilder() {
+        return new SearchOptions().toBuilder();
+    }
+
+    /** Number of hits per page, also per fetch of search stream */
+    private int pageSize = 10;
+    /** Sort of hits, null for sort by relevance */
+    private Sort sort;
+    /** Stored fields to load in hit document. Null loads whole document, empty set doesn't load document at all */
+    private Set<String> storedFields;
+    /** DocValues fields to load for each hit, without loading stored document */
+    private Set<String> docValueFields = Collections.emptySet();
+    /**
+     * Hits are counted exactly up to this number, beyond it total hits is lower bound and collector can skip documents which can't make
+     * it to the page. Default is Lucene's default, Integer.MAX_VALUE counts all hits
+     */
+    private int totalHitsThreshold = 1000;
+
+    boolean loadsDocument() {
+        return storedFields == null || !storedFields.isEmpty();
+    }
+}
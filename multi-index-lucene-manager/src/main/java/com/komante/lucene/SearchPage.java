@@ -0,0 +1,25 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.List;
+
+/** One page of search hits, with cursor to fetch the next page */
+@Getter
+@AllArgsConstructor
+@ToString
+public class SearchPage {
+    private List<LuceneSearchHit> hits;
+    /** Total number of matching documents, may be lower bound when totalHitsExact is false */
+    private long totalHits;
+    private boolean totalHitsExact;
+    /** Cursor for the next page, null if there are no more hits */
+    private ScoreDoc after;
+
+    public boolean hasNextPage() {
+        return after != null;
+    }
+}
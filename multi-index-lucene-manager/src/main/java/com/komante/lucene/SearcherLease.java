@@ -0,0 +1,52 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.IOException;
+
+/**
+ * Searcher acquired from index, with incremented reader reference count. Refresh can publish new searcher any time, but leased
+ * searcher stays open until the lease is closed, and retired reader is closed when its last lease is closed. Use in try-with-resources,
+ * one lease per thread.
+ */
+public class SearcherLease implements AutoCloseable {
+
+    private final ReferenceManager<IndexSearcher> searcherManager;
+    private final IndexSearcher searcher;
+    private final Runnable onRelease;
+    private boolean released;
+
+    SearcherLease(ReferenceManager<IndexSearcher> searcherManager, IndexSearcher searcher, Runnable onRelease) {
+        this.searcherManager = searcherManager;
+        this.searcher = searcher;
+        this.onRelease = onRelease;
+    }
+
+    public IndexSearcher getSearcher() {
+        if (released) {
+            throw new IllegalStateException("Searcher lease already released");
+        }
+        return searcher;
+    }
+
+    public IndexReader getReader() {
+        return getSearcher().getIndexReader();
+    }
+
+    /** Releases searcher. Calling it more than once has no effect */
+    @Override
+    @SneakyThrows(IOException.class)
+    public void close() {
+        if (!released) {
+            released = true;
+            try {
+                searcherManager.release(searcher);
+            } finally {
+                onRelease.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.komante.lucene;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.ToString;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Segments of the last commit of one index, or of all its shards */
+@Getter
+@AllArgsConstructor
+@ToString
+public class SegmentsSummary {
+    private int segments;
+    private long sizeBytes;
+    /** Documents in all segments, including deleted ones */
+    private long maxDoc;
+    private long deletedDocs;
+    /** Size of each segment, largest first */
+    private List<Long> segmentSizes;
+
+    /** Segments of all shards of one index */
+    static SegmentsSummary sum(List<SegmentsSummary> summaries) {
+        List<Long> segmentSizes = summaries.stream().flatMap(s -> s.getSegmentSizes().stream()).sorted(Comparator.reverseOrder())
+            .collect(Collectors.toList());
+        return new SegmentsSummary(segmentSizes.size(), summaries.stream().mapToLong(SegmentsSummary::getSizeBytes).sum(),
+            summaries.stream().mapToLong(SegmentsSummary::getMaxDoc).sum(),
+            summaries.stream().mapToLong(SegmentsSummary::getDeletedDocs).sum(), segmentSizes);
+    }
+
+    @SneakyThrows(IOException.class)
+    static SegmentsSummary ofLatestCommit(Directory directory) {
+        SegmentInfos segmentInfos = SegmentInfos.readLatestCommit(directory);
+        long sizeBytes = 0;
+        long maxDoc = 0;
+        long deletedDocs = 0;
+        List<Long> segmentSizes = new ArrayList<>(segmentInfos.size());
+        for (SegmentCommitInfo info : segmentInfos) {
+            long size = info.sizeInBytes();
+            sizeBytes += size;
+            maxDoc += info.info.maxDoc();
+            deletedDocs += info.getDelCount() + info.getSoftDelCount();
+            segmentSizes.add(size);
+        }
+        segmentSizes.sort(Comparator.reverseOrder());
+        return new SegmentsSummary(segmentInfos.size(), sizeBytes, maxDoc, deletedDocs, segmentSizes);
+    }
+}
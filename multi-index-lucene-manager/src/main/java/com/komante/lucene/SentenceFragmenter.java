@@ -0,0 +1,233 @@
+package com.komante.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Used to extract natural (sentence bound) fragment from a text fragment and to highlight selected terms in it.
+ * Boundaries are found by scanning text by char index, and fragment is written into reusable buffer, so one instance must not be used
+ * by several threads at once.
+ */
+class SentenceFragmenter {
+
+    public static final String HIGHLIGHT_START_TAG = "<em>";
+    public static final String HIGHLIGHT_END_TAG = "</em>";
+    private static final int HIGHLIGHT_START_TAG_LENGTH = 4;
+    private static final int HIGHLIGHT_END_TAG_LENGTH = 5;
+    private static final int HIGHLIGHT_TAGS_LENGTH = HIGHLIGHT_START_TAG_LENGTH + HIGHLIGHT_END_TAG_LENGTH;
+
+    private final int highlightsFragmentHalfSize;
+    private final StringBuilder buffer = new StringBuilder();
+
+    /*
+     * Bounds of the last computed fragment. Raw bounds and term offsets are text offsets, fragment bounds are positions in highlighted
+     * fragment: raw fragment with tags inserted around the term.
+     */
+    private int rawStart;
+    private int rawEnd;
+    private int termStart;
+    private int termEnd;
+    private int fragmentStart;
+    private int fragmentEnd;
+
+    public SentenceFragmenter(LuceneConfig.HighlightsConfig highlightsConfig) {
+        this.highlightsFragmentHalfSize = highlightsConfig.getFragmentSizeChars()/2;
+    }
+
+    /** Fragment around one term occurrence, trimmed to sentence, or at least word, boundaries */
+    public String getSentenceFragment(String text, String term, int termStartOffset, int termEndOffset) {
+        buffer.setLength(0);
+        appendSentenceFragment(buffer, text, termStartOffset, termEndOffset);
+        return buffer.toString();
+    }
+
+    /** Same as {@link #getSentenceFragment(String, String, int, int)}, but appends fragment to given builder */
+    public void appendSentenceFragment(StringBuilder out, CharSequence text, int termStartOffset, int termEndOffset) {
+        computeBounds(text, termStartOffset, termEndOffset);
+        //highlighted fragment consists of: text before term, start tag, term, end tag, text after term
+        int termFragmentStart = termStart - rawStart;
+        int termFragmentEnd = termEnd - rawStart + HIGHLIGHT_START_TAG_LENGTH;
+        appendPart(out, text, rawStart, 0, termFragmentStart);
+        appendPart(out, HIGHLIGHT_START_TAG, -termFragmentStart, termFragmentStart, termFragmentStart + HIGHLIGHT_START_TAG_LENGTH);
+        appendPart(out, text, termStart - termFragmentStart - HIGHLIGHT_START_TAG_LENGTH, termFragmentStart + HIGHLIGHT_START_TAG_LENGTH,
+            termFragmentEnd);
+        appendPart(out, HIGHLIGHT_END_TAG, -termFragmentEnd, termFragmentEnd, termFragmentEnd + HIGHLIGHT_END_TAG_LENGTH);
+        appendPart(out, text, termEnd - termFragmentEnd - HIGHLIGHT_END_TAG_LENGTH, termFragmentEnd + HIGHLIGHT_END_TAG_LENGTH,
+            rawEnd - rawStart + HIGHLIGHT_TAGS_LENGTH);
+    }
+
+    /**
+     * Fragments for several term occurrences of one text. Occurrences that fall into fragment of a previous occurrence are highlighted
+     * in that fragment, instead of making new overlapping one.
+     * @param termStartOffsets sorted start offsets of term occurrences
+     * @param termEndOffsets   end offsets of term occurrences
+     * @param termCount        number of used elements in offset arrays
+     * @param maxFragments     max number of returned fragments
+     */
+    public List<String> getSentenceFragments(CharSequence text, int[] termStartOffsets, int[] termEndOffsets, int termCount,
+                                             int maxFragments) {
+        List<String> fragments = new ArrayList<>();
+        int i = 0;
+        while (i < termCount && fragments.size() < maxFragments) {
+            buffer.setLength(0);
+            computeBounds(text, termStartOffsets[i], termEndOffsets[i]);
+            int textStart = toTextStart(fragmentStart);
+            int textEnd = toTextEnd(fragmentEnd);
+            int next = i + 1;
+            while (next < termCount && termEndOffsets[next] <= textEnd) {
+                next++;
+            }
+            if (next == i + 1) {
+                appendSentenceFragment(buffer, text, termStartOffsets[i], termEndOffsets[i]);
+            } else {
+                int position = textStart;
+                int lastEnd = -1;
+                for (int j = i; j < next; j++) {
+                    if (termStartOffsets[j] < lastEnd) {
+                        //overlapping occurrence is already highlighted
+                        continue;
+                    }
+                    buffer.append(text, position, termStartOffsets[j]).append(HIGHLIGHT_START_TAG)
+                        .append(text, termStartOffsets[j], termEndOffsets[j]).append(HIGHLIGHT_END_TAG);
+                    position = termEndOffsets[j];
+                    lastEnd = termEndOffsets[j];
+                }
+                buffer.append(text, position, Math.max(position, textEnd));
+            }
+            fragments.add(buffer.toString());
+            i = next;
+        }
+        return fragments;
+    }
+
+    /**
+     * Raw fragment spans half of fragment size on each side of the term. It is first trimmed to sentence boundaries, to start after
+     * the first sentence end before the term, and to end at the last sentence end after the term. Sides which couldn't be trimmed at
+     * sentence boundary are trimmed at word boundary.
+     */
+    private void computeBounds(CharSequence text, int termStartOffset, int termEndOffset) {
+        int textLength = text.length();
+        //if term is near beginning or end, ensure it doesn't go out of string bounds
+        rawStart = termStartOffset > highlightsFragmentHalfSize ? termStartOffset - highlightsFragmentHalfSize : 0;
+        rawEnd = termEndOffset > textLength - highlightsFragmentHalfSize ? textLength : termEndOffset + highlightsFragmentHalfSize;
+        termStart = termStartOffset;
+        termEnd = termEndOffset;
+        int rawTermFragmentEnd = termEnd - rawStart;
+        fragmentStart = 0;
+        fragmentEnd = rawEnd - rawStart + HIGHLIGHT_TAGS_LENGTH;
+
+        //first try to trim at sentence boundaries
+        boolean trimmedLeft = false;
+        boolean trimmedRight = false;
+        int sentenceEnd = indexOfSentenceEnd(text, rawStart, termStart);
+        if (sentenceEnd != -1) {
+            int sentenceBeginning = sentenceEnd + 1;
+            while (sentenceBeginning < termStart && isSentenceSeparator(text.charAt(sentenceBeginning))) {
+                sentenceBeginning++;
+            }
+            if (sentenceBeginning < termStart) {
+                fragmentStart = sentenceBeginning - rawStart;
+                trimmedLeft = true;
+            }
+        }
+        int lastSentenceEnd = lastIndexOfSentenceEnd(text, rawStart + fragmentStart, rawEnd);
+        if (lastSentenceEnd != -1) {
+            int lastSentenceEndPosition = toFragmentPosition(lastSentenceEnd) + 1;
+            if (lastSentenceEndPosition - fragmentStart > rawTermFragmentEnd) {
+                fragmentEnd = lastSentenceEndPosition;
+                trimmedRight = true;
+            }
+        }
+
+        //second try to trim at word boundaries
+        if (!trimmedLeft) {
+            int space = indexOf(text, ' ', rawStart, termStart);
+            if (space > rawStart) {
+                fragmentStart = space - rawStart;
+            }
+        }
+        if (!trimmedRight) {
+            int space = lastIndexOf(text, ' ', rawStart + fragmentStart, rawEnd);
+            if (space != -1) {
+                int spacePosition = toFragmentPosition(space) - fragmentStart;
+                if (spacePosition > 0 && spacePosition > rawTermFragmentEnd + HIGHLIGHT_TAGS_LENGTH) {
+                    fragmentEnd = fragmentStart + spacePosition;
+                }
+            }
+        }
+    }
+
+    /** Position in highlighted fragment, of a char of raw fragment */
+    private int toFragmentPosition(int textOffset) {
+        if (textOffset < termStart) {
+            return textOffset - rawStart;
+        } else if (textOffset < termEnd) {
+            return textOffset - rawStart + HIGHLIGHT_START_TAG_LENGTH;
+        }
+        return textOffset - rawStart + HIGHLIGHT_TAGS_LENGTH;
+    }
+
+    private int toTextStart(int fragmentPosition) {
+        int termFragmentStart = termStart - rawStart;
+        return fragmentPosition <= termFragmentStart ? rawStart + fragmentPosition : termStart;
+    }
+
+    private int toTextEnd(int fragmentPosition) {
+        int afterTermPosition = termEnd - rawStart + HIGHLIGHT_TAGS_LENGTH;
+        return fragmentPosition >= afterTermPosition ? rawStart + fragmentPosition - HIGHLIGHT_TAGS_LENGTH : termEnd;
+    }
+
+    /** Appends part of highlighted fragment, which is within fragment bounds */
+    private void appendPart(StringBuilder out, CharSequence source, int sourceOffset, int partStart, int partEnd) {
+        int start = Math.max(partStart, fragmentStart);
+        int end = Math.min(partEnd, fragmentEnd);
+        if (start < end) {
+            out.append(source, start + sourceOffset, end + sourceOffset);
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+
+    /** Dot or whitespace, as in regex [.\s] */
+    private static boolean isSentenceSeparator(char c) {
+        return c == '.' || c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static int indexOfSentenceEnd(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isSentenceEnd(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOfSentenceEnd(CharSequence text, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (isSentenceEnd(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence text, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,656 @@
+package com.komante.lucene;
+
+import com.komante.lucene.DefaultLuceneManager.BuiltGeneration;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Splits indexes configured with more than one shard into shard indexes, each with its own directory, writer and searcher. Documents
+ * are routed to shards by hash of shard key field. Writes to many shards run in parallel, searches fan out to all shards and merge their
+ * top hits, scored with statistics of all shards. Lookups and term deletes by shard key go only to the owning shard. Other indexes are
+ * passed to the wrapped manager unchanged.
+ * <p>
+ * Generations of changes are per shard, so {@link #waitForGeneration} refreshes all shards, and {@link #whenDurable},
+ * {@link #acquireSearcher} and {@link #getDocumentNumber} work only with shard indexes, see {@link Index#shard(int)}.
+ */
+@Slf4j
+public class ShardedLuceneManager implements LuceneManager {
+
+    /** End of documents of a shard in reindex queue */
+    private static final Optional<Document> END = Optional.empty();
+    /** Marker which fails reindex of a shard, when reindex of another shard or conversion failed */
+    private static final Optional<Document> ABORT = Optional.of(new Document());
+
+    private final LuceneManager luceneManager;
+    private final LuceneConfig luceneConfig;
+    private final ExecutorService shardExecutor;
+
+    public ShardedLuceneManager(LuceneManager luceneManager, LuceneConfig luceneConfig) {
+        this.luceneManager = luceneManager;
+        this.luceneConfig = luceneConfig;
+        shardExecutor = Executors.newFixedThreadPool(luceneConfig.getShardThreads(),
+            DefaultLuceneManager.daemonThreadFactory("lucene-shard-"));
+    }
+
+    public LuceneManager getLuceneManager() {
+        return luceneManager;
+    }
+
+    /** Shard of the key, by murmur hash of its UTF-8 bytes, which doesn't depend on JVM */
+    static int shardOf(String key, int shards) {
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(key), 0), shards);
+    }
+
+    @Override
+    public void closeLuceneResources() {
+        shardExecutor.shutdown();
+        luceneManager.closeLuceneResources();
+    }
+
+    @Override
+    public void openIndex(Index index, Analyzer analyzer) {
+        openIndex(index, analyzer, luceneConfig.isRecreateIndexes());
+    }
+
+    @Override
+    public void openIndex(Index index, Analyzer analyzer, boolean recreate) {
+        for (Index shard : shards(index)) {
+            luceneManager.openIndex(shard, analyzer, recreate);
+        }
+    }
+
+    @Override
+    public List<IndexStartupStats> openIndexes(Map<Index, Analyzer> analyzers) {
+        Map<Index, Analyzer> shardAnalyzers = new LinkedHashMap<>();
+        analyzers.forEach((index, analyzer) -> shards(index).forEach(shard -> shardAnalyzers.put(shard, analyzer)));
+        return luceneManager.openIndexes(shardAnalyzers);
+    }
+
+    /** Sum of all shards */
+    @Override
+    public ResultCacheStats getResultCacheStats(Index index) {
+        if (!isSharded(index)) {
+            return luceneManager.getResultCacheStats(index);
+        }
+        List<ResultCacheStats> stats = shards(index).stream().map(luceneManager::getResultCacheStats).collect(Collectors.toList());
+        return new ResultCacheStats(stats.stream().mapToLong(ResultCacheStats::getHits).sum(),
+            stats.stream().mapToLong(ResultCacheStats::getMisses).sum(), stats.stream().mapToLong(ResultCacheStats::getEvictions).sum(),
+            stats.stream().mapToInt(ResultCacheStats::getEntries).sum(), stats.stream().mapToLong(ResultCacheStats::getBytes).sum());
+    }
+
+    /** Shards are maintained in parallel, report has segments of all shards */
+    @Override
+    public MaintenanceReport runMaintenance(Index index) {
+        if (!isSharded(index)) {
+            return luceneManager.runMaintenance(index);
+        }
+        List<MaintenanceReport> reports = inParallel(shards(index), luceneManager::runMaintenance);
+        return new MaintenanceReport(index,
+            SegmentsSummary.sum(reports.stream().map(MaintenanceReport::getBefore).collect(Collectors.toList())),
+            SegmentsSummary.sum(reports.stream().map(MaintenanceReport::getAfter).collect(Collectors.toList())),
+            reports.stream().mapToLong(MaintenanceReport::getDurationMillis).max().orElse(0));
+    }
+
+    /** Sharded index is open when any of its shards is open */
+    @Override
+    public List<Index> getOpenIndexes() {
+        return luceneManager.getOpenIndexes().stream().map(Index::getLogicalIndex).distinct().collect(Collectors.toList());
+    }
+
+    /** @return generation of the change in its shard */
+    @Override
+    public long indexDocument(Index index, Document document, boolean commit) {
+        return luceneManager.indexDocument(shardOf(index, document), document, commit);
+    }
+
+    /** @return highest generation of all shards */
+    @Override
+    public long indexDocuments(Index index, List<Document> documents, boolean commit) {
+        if (!isSharded(index)) {
+            return luceneManager.indexDocuments(index, documents, commit);
+        }
+        Map<Index, List<Document>> shardDocuments = groupByShard(index, documents);
+        return max(inParallel(new ArrayList<>(shardDocuments.keySet()),
+            shard -> luceneManager.indexDocuments(shard, shardDocuments.get(shard), commit)));
+    }
+
+    /**
+     * Documents of one id have to be routed to the same shard, so shard key should be the id field, or a field which never changes for
+     * one id
+     * @return highest generation of all shards
+     */
+    @Override
+    public <T> long upsert(Index index, String idField, List<T> entities, DocumentConverter<T> documentConverter, boolean commit) {
+        if (!isSharded(index)) {
+            return luceneManager.upsert(index, idField, entities, documentConverter, commit);
+        }
+        List<Document> documents = entities.stream().map(documentConverter::getDocument).collect(Collectors.toList());
+        Map<Index, List<Document>> shardDocuments = groupByShard(index, documents);
+        return max(inParallel(new ArrayList<>(shardDocuments.keySet()),
+            shard -> luceneManager.upsert(shard, idField, shardDocuments.get(shard), document -> document, commit)));
+    }
+
+    /** @return highest generation of all shards */
+    @Override
+    public long commit(Index index) {
+        return max(inParallel(shards(index), luceneManager::commit));
+    }
+
+    /** Only for shard or not sharded index, because generation is valid only in its shard */
+    @Override
+    public CompletableFuture<Long> whenDurable(Index index, long generation) {
+        checkNotSharded(index, "whenDurable");
+        return luceneManager.whenDurable(index, generation);
+    }
+
+    /**
+     * Entities are converted on calling thread and added to shards in batches of bulk index queue size, each shard indexes one batch at
+     * a time, in parallel with other shards
+     */
+    @Override
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    public <T> BulkIndexResult bulkIndex(Index index, Stream<T> entities, DocumentConverter<T> documentConverter, boolean commit) {
+        if (!isSharded(index)) {
+            return luceneManager.bulkIndex(index, entities, documentConverter, commit);
+        }
+        List<Index> shards = shards(index);
+        int batchSize = luceneConfig.getIndexConfig(index).getBulkIndexQueueSize();
+        List<List<Document>> batches = shards.stream().map(shard -> new ArrayList<Document>(batchSize)).collect(Collectors.toList());
+        List<Future<Long>> running = new ArrayList<>(shards.size());
+        shards.forEach(shard -> running.add(CompletableFuture.completedFuture(-1L)));
+        long start = System.nanoTime();
+        long documents = 0;
+        long generation = -1;
+        Iterator<T> iterator = entities.iterator();
+        while (iterator.hasNext()) {
+            Document document = documentConverter.getDocument(iterator.next());
+            int shard = shardOf(shardKey(index, document), shards.size());
+            List<Document> batch = batches.get(shard);
+            batch.add(document);
+            documents++;
+            if (batch.size() == batchSize) {
+                generation = Math.max(generation, running.get(shard).get());
+                running.set(shard, shardExecutor.submit(() -> luceneManager.indexDocuments(shards.get(shard), batch, false)));
+                batches.set(shard, new ArrayList<>(batchSize));
+            }
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            generation = Math.max(generation, running.get(shard).get());
+            if (!batches.get(shard).isEmpty()) {
+                generation = Math.max(generation, luceneManager.indexDocuments(shards.get(shard), batches.get(shard), false));
+            }
+        }
+        if (commit) {
+            commit(index);
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        BulkIndexResult result = new BulkIndexResult(documents, elapsedMillis, documents * 1000.0 / elapsedMillis, generation);
+        log.info("Bulk indexed {} into {} shards: {}", index, shards.size(), result);
+        return result;
+    }
+
+    /**
+     * Entities are converted on calling thread and routed to reindex of each shard, which run in parallel. Shards switch to their new
+     * generations together, only when all of them are built. When conversion or any shard fails, other shards are aborted, built
+     * generations are deleted and all shards keep their current generation. Sharded index can be reindexed only by DefaultLuceneManager
+     */
+    @Override
+    @SneakyThrows(InterruptedException.class)
+    public <T> BulkIndexResult reindex(Index index, Analyzer analyzer, Stream<T> entities, DocumentConverter<T> documentConverter) {
+        if (!isSharded(index)) {
+            return luceneManager.reindex(index, analyzer, entities, documentConverter);
+        }
+        if (!(luceneManager instanceof DefaultLuceneManager)) {
+            throw new IllegalStateException("Sharded " + index + " can be reindexed only by DefaultLuceneManager");
+        }
+        DefaultLuceneManager manager = (DefaultLuceneManager) luceneManager;
+        List<Index> shards = shards(index);
+        int queueSize = luceneConfig.getIndexConfig(index).getBulkIndexQueueSize();
+        List<BlockingQueue<Optional<Document>>> queues = new ArrayList<>(shards.size());
+        List<Future<BuiltGeneration>> builds = new ArrayList<>(shards.size());
+        //each shard consumes its queue until the end, so all of them need a thread at once
+        ExecutorService reindexExecutor = Executors.newFixedThreadPool(shards.size(),
+            DefaultLuceneManager.daemonThreadFactory("lucene-reindex-" + index.getName() + "-"));
+        for (Index shard : shards) {
+            BlockingQueue<Optional<Document>> queue = new ArrayBlockingQueue<>(queueSize);
+            queues.add(queue);
+            Stream<Document> documents = Stream.generate(() -> take(queue)).takeWhile(Optional::isPresent).map(Optional::get)
+                .map(document -> checkNotAborted(document, shard));
+            builds.add(reindexExecutor.submit(() -> manager.buildGeneration(shard, analyzer, documents, document -> document)));
+        }
+        reindexExecutor.shutdown();
+        long start = System.nanoTime();
+        Throwable failure = null;
+        boolean shardFailed = false;
+        try {
+            Iterator<T> iterator = entities.iterator();
+            while (iterator.hasNext() && !shardFailed) {
+                Document document = documentConverter.getDocument(iterator.next());
+                int shard = shardOf(shardKey(index, document), shards.size());
+                shardFailed = !put(queues.get(shard), Optional.of(document), builds.get(shard));
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            put(queues.get(shard), failure == null && !shardFailed ? END : ABORT, builds.get(shard));
+        }
+        List<BuiltGeneration> generations = new ArrayList<>(shards.size());
+        for (Future<BuiltGeneration> build : builds) {
+            try {
+                generations.add(build.get());
+            } catch (ExecutionException e) {
+                //aborted shards fail with CancellationException, cause of the abort is kept
+                if (failure == null || failure instanceof CancellationException) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            generations.forEach(manager::discardGeneration);
+            throw new IllegalStateException("Reindex of " + index + " failed, shards keep their current generation", failure);
+        }
+        manager.switchGenerations(generations);
+        long documents = 0;
+        long generation = -1;
+        for (BuiltGeneration built : generations) {
+            documents += built.getResult().getDocuments();
+            generation = Math.max(generation, built.getResult().getGeneration());
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        return new BulkIndexResult(documents, elapsedMillis, documents * 1000.0 / elapsedMillis, generation);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static Optional<Document> take(BlockingQueue<Optional<Document>> queue) {
+        return queue.take();
+    }
+
+    /** Fails reindex of the shard, so it doesn't build a generation with only part of the documents */
+    private static Document checkNotAborted(Document document, Index shard) {
+        if (document == ABORT.get()) {
+            throw new CancellationException("Reindex of " + shard + " aborted");
+        }
+        return document;
+    }
+
+    /**
+     * Waits for space in queue of the shard
+     * @return false if reindex of the shard has already ended
+     */
+    @SneakyThrows(InterruptedException.class)
+    private static boolean put(BlockingQueue<Optional<Document>> queue, Optional<Document> document, Future<BuiltGeneration> build) {
+        while (!queue.offer(document, 100, TimeUnit.MILLISECONDS)) {
+            if (build.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void refreshSearcher(Index index) {
+        inParallel(shards(index), shard -> {
+            luceneManager.refreshSearcher(shard);
+            return null;
+        });
+    }
+
+    /** Sharded index refreshes all shards, which makes all changes visible */
+    @Override
+    public void waitForGeneration(Index index, long generation) {
+        if (isSharded(index)) {
+            refreshSearcher(index);
+        } else {
+            luceneManager.waitForGeneration(index, generation);
+        }
+    }
+
+    /** Only for shard or not sharded index */
+    @Override
+    public SearcherLease acquireSearcher(Index index) {
+        checkNotSharded(index, "acquireSearcher");
+        return luceneManager.acquireSearcher(index);
+    }
+
+    /** Each shard is backed up in parallel into subdirectory named by the shard */
+    @Override
+    public BackupResult backup(Index index, Path destination) {
+        if (!isSharded(index)) {
+            return luceneManager.backup(index, destination);
+        }
+        return BackupResult.sum(index, inParallel(shards(index), shard -> luceneManager.backup(shard,
+            destination.resolve(shard.getName()))));
+    }
+
+    /** Only for shard or not sharded index */
+    @Override
+    public SearcherLease acquireReplicaSearcher(Index index) {
+        checkNotSharded(index, "acquireReplicaSearcher");
+        return luceneManager.acquireReplicaSearcher(index);
+    }
+
+    @Override
+    public BackupResult syncReplica(Index index) {
+        return BackupResult.sum(index, inParallel(shards(index), luceneManager::syncReplica));
+    }
+
+    @Override
+    public List<Document> search(Index index, Query query) {
+        return search(index, query, false);
+    }
+
+    /** Top hits of all shards, merged by score */
+    @Override
+    public List<Document> search(Index index, Query query, boolean refreshSearcher) {
+        if (!isSharded(index)) {
+            return luceneManager.search(index, query, refreshSearcher);
+        }
+        if (refreshSearcher) {
+            refreshSearcher(index);
+        }
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(luceneConfig.getMaxSearchSize()).build();
+        return luceneManager.searchPage(shards(index), query, options, null).getHits().stream().map(LuceneSearchHit::getDocument)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public int count(Index index, Query query) {
+        return inParallel(shards(index), shard -> luceneManager.count(shard, query)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public boolean exists(Index index, Query query) {
+        return inParallel(shards(index), shard -> luceneManager.exists(shard, query)).contains(true);
+    }
+
+    @Override
+    public SearchPage searchPage(Index index, Query query, SearchOptions options) {
+        return searchPage(index, query, options, null);
+    }
+
+    /** Hits of sharded index have their shard as index */
+    @Override
+    public SearchPage searchPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        if (!isSharded(index)) {
+            return luceneManager.searchPage(index, query, options, after);
+        }
+        return luceneManager.searchPage(shards(index), query, options, after);
+    }
+
+    /** Sharded index is searched page by page, so refresh between pages can shift results */
+    @Override
+    public Stream<LuceneSearchHit> searchStream(Index index, Query query, SearchOptions options) {
+        if (!isSharded(index)) {
+            return luceneManager.searchStream(index, query, options);
+        }
+        return Stream.iterate(searchPage(index, query, options), Objects::nonNull,
+                page -> page.hasNextPage() ? searchPage(index, query, options, page.getAfter()) : null)
+            .flatMap(page -> page.getHits().stream());
+    }
+
+    @Override
+    public SearchPage searchPage(Collection<Index> indexes, Query query, SearchOptions options) {
+        return searchPage(new ArrayList<>(indexes), query, options, null);
+    }
+
+    /** Sharded indexes are replaced by their shards */
+    @Override
+    public SearchPage searchPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after) {
+        return luceneManager.searchPage(allShards(indexes), query, options, after);
+    }
+
+    /** Facets of all shards, counted together */
+    @Override
+    public FacetResult facets(Index index, Query query, FacetRequest request) {
+        if (!isSharded(index)) {
+            return luceneManager.facets(index, query, request);
+        }
+        return luceneManager.facets(shards(index), query, request);
+    }
+
+    /** Sharded indexes are replaced by their shards */
+    @Override
+    public FacetResult facets(Collection<Index> indexes, Query query, FacetRequest request) {
+        return luceneManager.facets(allShards(indexes), query, request);
+    }
+
+    /** Term query on shard key deletes only in owning shard, other queries in all shards */
+    @Override
+    public void deleteDocuments(Index index, Query query) {
+        if (isSharded(index) && query instanceof TermQuery
+            && ((TermQuery) query).getTerm().field().equals(luceneConfig.getIndexConfig(index).getShardKeyField())) {
+            luceneManager.deleteDocuments(ownerShard(index, ((TermQuery) query).getTerm().text()), query);
+            return;
+        }
+        inParallel(shards(index), shard -> {
+            luceneManager.deleteDocuments(shard, query);
+            return null;
+        });
+    }
+
+    /** Top hits of all shards, scored with statistics of all shards and merged by score */
+    @Override
+    public List<LuceneHighlightResult<Document>> getHighlights(Index index, Query query) {
+        if (!isSharded(index)) {
+            return luceneManager.getHighlights(index, query);
+        }
+        return luceneManager.getHighlights(shards(index), query);
+    }
+
+    /** Sharded indexes are replaced by their shards */
+    @Override
+    public List<LuceneHighlightResult<Document>> getHighlights(Collection<Index> indexes, Query query) {
+        return luceneManager.getHighlights(allShards(indexes), query);
+    }
+
+    /** Pages of all shards, merged by score or sort values like searchPage */
+    @Override
+    public SearchPage highlightPage(Index index, Query query, SearchOptions options, ScoreDoc after) {
+        if (!isSharded(index)) {
+            return luceneManager.highlightPage(index, query, options, after);
+        }
+        return luceneManager.highlightPage(shards(index), query, options, after);
+    }
+
+    /** Sharded indexes are replaced by their shards */
+    @Override
+    public SearchPage highlightPage(List<Index> indexes, Query query, SearchOptions options, ScoreDoc after) {
+        return luceneManager.highlightPage(allShards(indexes), query, options, after);
+    }
+
+    /** Top hits of all shards, scored with statistics of all shards and merged by score */
+    @Override
+    public List<LuceneHighlightResult<Document>> getCustomHighlights(Index index, Query query, Predicate<String> highlightTermPredicate) {
+        if (!isSharded(index)) {
+            return luceneManager.getCustomHighlights(index, query, highlightTermPredicate);
+        }
+        return luceneManager.getCustomHighlights(shards(index), query, highlightTermPredicate);
+    }
+
+    /** Sharded indexes are replaced by their shards */
+    @Override
+    public List<LuceneHighlightResult<Document>> getCustomHighlights(Collection<Index> indexes, Query query,
+                                                                     Predicate<String> highlightTermPredicate) {
+        return luceneManager.getCustomHighlights(allShards(indexes), query, highlightTermPredicate);
+    }
+
+    /** Looks up only owning shard when id field is shard key, otherwise all shards */
+    @Override
+    public Optional<Document> getDocumentById(Index index, String idField, String idValue) {
+        if (!isSharded(index) || isShardKey(index, idField)) {
+            return luceneManager.getDocumentById(ownerShard(index, idValue), idField, idValue);
+        }
+        List<Document> documents = inParallel(shards(index), shard -> luceneManager.getDocumentById(shard, idField, idValue)).stream()
+            .flatMap(Optional::stream).collect(Collectors.toList());
+        if (documents.size() > 1) {
+            throw new IllegalStateException("More than one document with " + idField + ": " + idValue + " in " + index);
+        }
+        return documents.stream().findFirst();
+    }
+
+    /** Each owning shard looks up its ids when id field is shard key, otherwise each shard looks up all ids */
+    @Override
+    public List<Document> getDocumentsByIds(Index index, String idField, List<String> idValues) {
+        return byIds(index, idField, idValues, (shard, shardIds) -> luceneManager.getDocumentsByIds(shard, idField, shardIds));
+    }
+
+    /** Only for shard or not sharded index, like the lease */
+    @Override
+    public int getDocumentNumber(Index index, SearcherLease lease, String idField, String idValue) {
+        checkNotSharded(index, "getDocumentNumber");
+        return luceneManager.getDocumentNumber(index, lease, idField, idValue);
+    }
+
+    @Override
+    public List<TermVectorData> getDocumentTerms(Index index, String idField, String idValue, String termField, boolean includeOffsets) {
+        DocumentTermsData documentTerms = getDocumentsTerms(index, idField, List.of(idValue), termField, includeOffsets).get(0);
+        return documentTerms == null ? new ArrayList<>() : documentTerms.toTermVectorData();
+    }
+
+    /** Global statistics of terms are statistics of the owning shard */
+    @Override
+    public List<DocumentTermsData> getDocumentsTerms(Index index, String idField, List<String> idValues, String termField,
+                                                     boolean includeOffsets) {
+        return byIds(index, idField, idValues,
+            (shard, shardIds) -> luceneManager.getDocumentsTerms(shard, idField, shardIds, termField, includeOffsets));
+    }
+
+    /** Results of lookup by ids in order of ids, from owning shards, or first found in all shards */
+    private <R> List<R> byIds(Index index, String idField, List<String> idValues, ShardLookup<R> lookup) {
+        if (!isSharded(index)) {
+            return lookup.lookup(index, idValues);
+        }
+        List<Index> shards = shards(index);
+        List<R> results = new ArrayList<>(Collections.nCopies(idValues.size(), null));
+        if (isShardKey(index, idField)) {
+            Map<Integer, List<Integer>> positionsByShard = IntStream.range(0, idValues.size()).boxed()
+                .collect(Collectors.groupingBy(i -> shardOf(idValues.get(i), shards.size())));
+            List<Index> ownerShards = positionsByShard.keySet().stream().map(shards::get).collect(Collectors.toList());
+            List<List<R>> shardResults = inParallel(ownerShards, shard -> lookup.lookup(shard,
+                positionsByShard.get(shards.indexOf(shard)).stream().map(idValues::get).collect(Collectors.toList())));
+            for (int s = 0; s < ownerShards.size(); s++) {
+                List<Integer> positions = positionsByShard.get(shards.indexOf(ownerShards.get(s)));
+                for (int i = 0; i < positions.size(); i++) {
+                    results.set(positions.get(i), shardResults.get(s).get(i));
+                }
+            }
+        } else {
+            for (List<R> shardResults : inParallel(shards, shard -> lookup.lookup(shard, idValues))) {
+                for (int i = 0; i < shardResults.size(); i++) {
+                    if (results.get(i) == null) {
+                        results.set(i, shardResults.get(i));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private interface ShardLookup<R> {
+        List<R> lookup(Index shard, List<String> idValues);
+    }
+
+    private boolean isSharded(Index index) {
+        return !index.isShard() && luceneConfig.getIndexConfig(index).getShards() > 1;
+    }
+
+    private boolean isShardKey(Index index, String field) {
+        return field.equals(luceneConfig.getIndexConfig(index).getShardKeyField());
+    }
+
+    /** Shards of sharded index, or the index itself */
+    private List<Index> shards(Index index) {
+        if (!isSharded(index)) {
+            return List.of(index);
+        }
+        return IntStream.range(0, luceneConfig.getIndexConfig(index).getShards()).mapToObj(index::shard).collect(Collectors.toList());
+    }
+
+    /** Shards of sharded indexes, and not sharded indexes themselves */
+    private List<Index> allShards(Collection<Index> indexes) {
+        return indexes.stream().flatMap(index -> shards(index).stream()).collect(Collectors.toList());
+    }
+
+    private Index ownerShard(Index index, String key) {
+        return isSharded(index) ? index.shard(shardOf(key, luceneConfig.getIndexConfig(index).getShards())) : index;
+    }
+
+    private Index shardOf(Index index, Document document) {
+        return isSharded(index) ? ownerShard(index, shardKey(index, document)) : index;
+    }
+
+    private String shardKey(Index index, Document document) {
+        String keyField = luceneConfig.getIndexConfig(index).getShardKeyField();
+        String key = document.get(keyField);
+        if (key == null) {
+            throw new IllegalStateException("Document without shard key " + keyField + " can't be routed to shard of " + index);
+        }
+        return key;
+    }
+
+    /** Documents by shard, each in order of the list */
+    private Map<Index, List<Document>> groupByShard(Index index, List<Document> documents) {
+        return documents.stream().collect(Collectors.groupingBy(document -> shardOf(index, document), LinkedHashMap::new,
+            Collectors.toList()));
+    }
+
+    private void checkNotSharded(Index index, String operation) {
+        if (isSharded(index)) {
+            throw new IllegalStateException(operation + " works only with shards of sharded " + index);
+        }
+    }
+
+    /** Runs operation for each shard on shard threads, and returns results in order of shards */
+    @SneakyThrows({InterruptedException.class, ExecutionException.class})
+    private <R> List<R> inParallel(List<Index> shards, Function<Index, R> operation) {
+        if (shards.size() == 1) {
+            return Collections.singletonList(operation.apply(shards.get(0)));
+        }
+        List<Future<R>> futures = new ArrayList<>(shards.size());
+        for (Index shard : shards) {
+            futures.add(shardExecutor.submit(() -> operation.apply(shard)));
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        for (Future<R> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static long max(List<Long> generations) {
+        return generations.stream().mapToLong(Long::longValue).max().orElse(-1);
+    }
+}
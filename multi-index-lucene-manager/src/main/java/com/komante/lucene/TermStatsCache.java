@@ -0,0 +1,101 @@
+package com.komante.lucene;
+
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global docFreq and totalTermFreq of terms, for one reader generation. Statistics change only when reader changes, so cache is
+ * dropped when lookup comes with a different reader, that is after refresh. Terms which aren't cached are read in one sorted pass over
+ * terms dictionary of each segment.
+ */
+class TermStatsCache {
+
+    private final int maxTerms;
+    private volatile ReaderStats current;
+
+    TermStatsCache(int maxTerms) {
+        this.maxTerms = maxTerms;
+    }
+
+    /**
+     * Fills statistics of terms into arrays at the same index as the term.
+     * @param terms sorted unique terms
+     */
+    @SneakyThrows(IOException.class)
+    void termStats(IndexReader reader, String field, BytesRef[] terms, int[] docFreqs, long[] totalTermFreqs) {
+        ReaderStats readerStats = readerStats(reader);
+        Map<BytesRef, long[]> cached = readerStats != null
+                ? readerStats.fields.computeIfAbsent(field, f -> new ConcurrentHashMap<>()) : null;
+        int[] missing = new int[terms.length];
+        int missingCount = 0;
+        for (int i = 0; i < terms.length; i++) {
+            long[] stats = cached != null ? cached.get(terms[i]) : null;
+            if (stats != null) {
+                docFreqs[i] = (int) stats[0];
+                totalTermFreqs[i] = stats[1];
+            } else {
+                docFreqs[i] = 0;
+                totalTermFreqs[i] = 0;
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms leafTerms = leaf.reader().terms(field);
+            if (leafTerms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = leafTerms.iterator();
+            for (int m = 0; m < missingCount; m++) {
+                int i = missing[m];
+                if (termsEnum.seekExact(terms[i])) {
+                    docFreqs[i] += termsEnum.docFreq();
+                    totalTermFreqs[i] += termsEnum.totalTermFreq();
+                }
+            }
+        }
+        if (cached != null) {
+            for (int m = 0; m < missingCount && readerStats.size.get() < maxTerms; m++) {
+                int i = missing[m];
+                if (cached.putIfAbsent(BytesRef.deepCopyOf(terms[i]), new long[]{docFreqs[i], totalTermFreqs[i]}) == null) {
+                    readerStats.size.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /** Cached statistics of the reader, null if reader can't be cached */
+    private ReaderStats readerStats(IndexReader reader) {
+        if (maxTerms <= 0 || reader.getReaderCacheHelper() == null) {
+            return null;
+        }
+        IndexReader.CacheKey readerKey = reader.getReaderCacheHelper().getKey();
+        ReaderStats stats = current;
+        if (stats == null || stats.readerKey != readerKey) {
+            stats = new ReaderStats(readerKey);
+            current = stats;
+        }
+        return stats;
+    }
+
+    private static class ReaderStats {
+        private final IndexReader.CacheKey readerKey;
+        private final Map<String, Map<BytesRef, long[]>> fields = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        ReaderStats(IndexReader.CacheKey readerKey) {
+            this.readerKey = readerKey;
+        }
+    }
+}
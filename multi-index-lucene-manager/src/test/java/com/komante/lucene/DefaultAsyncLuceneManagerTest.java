@@ -0,0 +1,125 @@
+package com.komante.lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DefaultAsyncLuceneManagerTest {
+
+    @TempDir
+    Path indexDir;
+
+    private AsyncLuceneManager asyncLuceneManager;
+
+    @AfterEach
+    public void close() {
+        if (asyncLuceneManager != null) {
+            asyncLuceneManager.closeExecutors();
+            asyncLuceneManager.getLuceneManager().closeLuceneResources();
+        }
+    }
+
+    @Test
+    public void stalledWritesDontBlockReads() throws Exception {
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().asyncWriteThreads(1).asyncWriteQueueSize(1).build()).build();
+        asyncLuceneManager = new DefaultAsyncLuceneManager(new DefaultLuceneManager(luceneConfig), luceneConfig);
+        Index index = new Index("async");
+        asyncLuceneManager.getLuceneManager().openIndex(index, new StandardAnalyzer());
+        asyncLuceneManager.indexDocument(index, DefaultLuceneManagerTest.document("1", "Lucene in action"), true).get();
+        asyncLuceneManager.refreshSearcher(index).get();
+
+        //write thread is stalled on analysis of document content, one commit waits in the queue and next one is rejected
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Document stalled = new Document();
+        stalled.add(new StringField("id", "2", Field.Store.YES));
+        stalled.add(new TextField("content", new BlockingReader("Lucene again", started, release)));
+        CompletableFuture<Long> stalledWrite = asyncLuceneManager.indexDocument(index, stalled, false);
+        CompletableFuture<Long> queuedCommit;
+        try {
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            queuedCommit = asyncLuceneManager.commit(index);
+            CompletableFuture<Long> rejected = asyncLuceneManager.commit(index);
+
+            ExecutionException rejection = Assertions.assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(rejection.getCause() instanceof RejectedExecutionException);
+            Assertions.assertEquals(1, asyncLuceneManager.search(index, new TermQuery(new Term("content", "lucene")))
+                .get(5, TimeUnit.SECONDS).size());
+            AsyncExecutorStats stats = asyncLuceneManager.getExecutorStats(index);
+            Assertions.assertEquals(1, stats.getWritesQueued());
+            Assertions.assertEquals(1, stats.getWritesRejected());
+            Assertions.assertEquals(0, stats.getReadsRejected());
+        } finally {
+            release.countDown();
+        }
+
+        stalledWrite.get(5, TimeUnit.SECONDS);
+        queuedCommit.get(5, TimeUnit.SECONDS);
+        asyncLuceneManager.refreshSearcher(index).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, asyncLuceneManager.search(index, new TermQuery(new Term("content", "lucene"))).get().size());
+    }
+
+    @Test
+    public void closeExecutorsOfIndex() throws Exception {
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true);
+        asyncLuceneManager = new DefaultAsyncLuceneManager(new DefaultLuceneManager(luceneConfig), luceneConfig);
+        Index index = new Index("closed");
+        Index other = new Index("other");
+        asyncLuceneManager.getLuceneManager().openIndex(index, new StandardAnalyzer());
+        asyncLuceneManager.getLuceneManager().openIndex(other, new StandardAnalyzer());
+        CompletableFuture<Long> queued = asyncLuceneManager.indexDocument(index, DefaultLuceneManagerTest.document("1", "Lucene"), true);
+        asyncLuceneManager.indexDocument(other, DefaultLuceneManagerTest.document("1", "Lucene"), true).get(5, TimeUnit.SECONDS);
+
+        //queued operation completes, next one runs on new executors of the index
+        asyncLuceneManager.closeExecutors(index);
+        queued.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, asyncLuceneManager.count(index, new TermQuery(new Term("content", "lucene"))).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, asyncLuceneManager.count(other, new TermQuery(new Term("content", "lucene"))).get(5, TimeUnit.SECONDS));
+    }
+
+    /** Reader which signals start of reading and waits for latch before returning its text */
+    private static class BlockingReader extends Reader {
+        private final Reader text;
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingReader(String text, CountDownLatch started, CountDownLatch release) {
+            this.text = new StringReader(text);
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            try {
+                started.countDown();
+                release.await();
+                return text.read(buffer, offset, length);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
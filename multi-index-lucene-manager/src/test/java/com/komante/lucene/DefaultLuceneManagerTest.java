@@ -0,0 +1,732 @@
+package com.komante.lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class DefaultLuceneManagerTest {
+
+    @TempDir
+    Path indexDir;
+
+    private LuceneManager luceneManager;
+
+    @AfterEach
+    public void close() {
+        if (luceneManager != null) {
+            luceneManager.closeLuceneResources();
+        }
+    }
+
+    static Document document(String id, String content) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.YES));
+        doc.add(new TextField("content", content, Field.Store.YES));
+        return doc;
+    }
+
+    @Test
+    public void nrtSearchWithoutCommit() {
+        Index index = new Index("nrt");
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .indexConfigs(Map.of("nrt", LuceneConfig.indexConfigBuilder().nrt(true).nrtMaxStaleMillis(5000).build())).build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        TermQuery query = new TermQuery(new Term("content", "lucene"));
+        Assertions.assertEquals(0, luceneManager.search(index, query).size());
+
+        long generation = luceneManager.indexDocument(index, document("1", "Lucene in action"), false);
+        luceneManager.waitForGeneration(index, generation);
+        Assertions.assertEquals(1, luceneManager.search(index, query).size());
+
+        luceneManager.indexDocument(index, document("2", "Lucene NRT"), false);
+        Assertions.assertEquals(2, luceneManager.search(index, query, true).size());
+    }
+
+    @Test
+    public void searcherSeesOnlyCommittedChanges() {
+        Index index = new Index("committed");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        TermQuery query = new TermQuery(new Term("content", "lucene"));
+
+        luceneManager.indexDocument(index, document("1", "Lucene in action"), false);
+        Assertions.assertEquals(0, luceneManager.search(index, query, true).size());
+        luceneManager.indexDocument(index, document("2", "Lucene again"), true);
+        Assertions.assertEquals(2, luceneManager.search(index, query, true).size());
+        Assertions.assertThrows(IllegalStateException.class, () -> luceneManager.waitForGeneration(index, 1));
+    }
+
+    @Test
+    public void pagedSearchWithProjection() {
+        Index index = new Index("paged");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Document document = document(String.valueOf(i), "paged document");
+            document.add(new NumericDocValuesField("number", i));
+            documents.add(document);
+        }
+        luceneManager.indexDocuments(index, documents, true);
+        TermQuery query = new TermQuery(new Term("content", "paged"));
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(10).sort(new Sort(new SortField("number", SortField.Type.LONG)))
+            .storedFields(Set.of("id")).docValueFields(Set.of("number")).build();
+
+        SearchPage page = luceneManager.searchPage(index, query, options);
+        Assertions.assertEquals(25, page.getTotalHits());
+        Assertions.assertEquals(10, page.getHits().size());
+        LuceneSearchHit hit = page.getHits().get(0);
+        Assertions.assertEquals("0", hit.getDocument().get("id"));
+        Assertions.assertNull(hit.getDocument().get("content"));
+        Assertions.assertEquals(0L, hit.getDocValues().get("number"));
+        Assertions.assertTrue(Float.isNaN(hit.getScore()));
+        page = luceneManager.searchPage(index, query, options, page.getAfter());
+        Assertions.assertEquals("10", page.getHits().get(0).getDocument().get("id"));
+
+        SearchOptions noDocuments = options.toBuilder().storedFields(Set.of()).build();
+        try (Stream<LuceneSearchHit> hits = luceneManager.searchStream(index, query, noDocuments)) {
+            List<Object> numbers = hits.peek(h -> Assertions.assertNull(h.getDocument())).map(h -> h.getDocValues().get("number"))
+                .collect(Collectors.toList());
+            Assertions.assertEquals(25, numbers.size());
+            Assertions.assertEquals(24L, numbers.get(24));
+        }
+    }
+
+    @Test
+    public void countExistsAndTotalHitsThreshold() {
+        Index index = new Index("count");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            documents.add(document(String.valueOf(i), i % 2 == 0 ? "even document" : "odd document"));
+        }
+        luceneManager.indexDocuments(index, documents, true);
+        luceneManager.deleteDocuments(index, new TermQuery(new Term("id", "0")));
+        luceneManager.commit(index);
+        luceneManager.refreshSearcher(index);
+
+        Assertions.assertEquals(24, luceneManager.count(index, new TermQuery(new Term("content", "even"))));
+        Assertions.assertEquals(49, luceneManager.count(index, new TermQuery(new Term("content", "document"))));
+        Assertions.assertTrue(luceneManager.exists(index, new TermQuery(new Term("content", "odd"))));
+        Assertions.assertFalse(luceneManager.exists(index, new TermQuery(new Term("content", "missing"))));
+        Assertions.assertFalse(luceneManager.exists(index, new TermQuery(new Term("id", "0"))));
+
+        TermQuery query = new TermQuery(new Term("content", "document"));
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(5).totalHitsThreshold(10).build();
+        SearchPage page = luceneManager.searchPage(index, query, options);
+        Assertions.assertFalse(page.isTotalHitsExact());
+        Assertions.assertTrue(page.getTotalHits() >= 10 && page.getTotalHits() <= 49);
+        Assertions.assertEquals(5, page.getHits().size());
+        Assertions.assertEquals(5, luceneManager.searchPage(index, query, options, page.getAfter()).getHits().size());
+        try (Stream<LuceneSearchHit> hits = luceneManager.searchStream(index, query, options)) {
+            Assertions.assertEquals(49, hits.count());
+        }
+        page = luceneManager.searchPage(index, query, options.toBuilder().totalHitsThreshold(Integer.MAX_VALUE).build());
+        Assertions.assertTrue(page.isTotalHitsExact());
+        Assertions.assertEquals(49, page.getTotalHits());
+    }
+
+    @Test
+    public void upsert() {
+        Map<String, LuceneConfig.IndexConfig> indexConfigs = Map.of(
+            "hard", LuceneConfig.indexConfigBuilder().build(),
+            "soft", LuceneConfig.indexConfigBuilder().softDeletesField("deleted").build(),
+            "softNrt", LuceneConfig.indexConfigBuilder().softDeletesField("deleted").nrt(true).build());
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder().indexConfigs(indexConfigs).build());
+        DocumentConverter<String> converter = idAndContent -> document(idAndContent.split(":")[0], idAndContent.split(":")[1]);
+        for (String name : indexConfigs.keySet()) {
+            Index index = new Index(name);
+            luceneManager.openIndex(index, new StandardAnalyzer());
+            luceneManager.upsert(index, "id", List.of("1:first", "2:second"), converter, true);
+            luceneManager.upsert(index, "id", List.of("1:updated", "3:third", "1:latest"), converter, true);
+            luceneManager.refreshSearcher(index);
+
+            Assertions.assertEquals(3, luceneManager.count(index, new MatchAllDocsQuery()), name);
+            Assertions.assertEquals("latest", luceneManager.getDocumentById(index, "id", "1").orElseThrow().get("content"), name);
+            Assertions.assertFalse(luceneManager.exists(index, new TermQuery(new Term("content", "first"))), name);
+            Assertions.assertFalse(luceneManager.exists(index, new TermQuery(new Term("content", "updated"))), name);
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> luceneManager.upsert(new Index("hard"), "missing", List.of("4:fourth"),
+            converter, false));
+    }
+
+    @Test
+    public void federatedSearchScoresLikeOneIndex() {
+        ExecutorService sliceExecutor = Executors.newFixedThreadPool(2);
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().sliceExecutor(sliceExecutor).build()).build());
+        Index all = new Index("all");
+        luceneManager.openIndex(all, new StandardAnalyzer());
+        List<Index> indexes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Index index = new Index("federated" + i);
+            luceneManager.openIndex(index, new StandardAnalyzer());
+            indexes.add(index);
+            List<Document> documents = new ArrayList<>();
+            for (int j = 0; j <= i * 5; j++) {
+                documents.add(document(i + "-" + j, j % 2 == 0 ? "federated search" : "federated search federated"));
+            }
+            luceneManager.indexDocuments(index, documents, true);
+            luceneManager.indexDocuments(all, documents, true);
+        }
+        TermQuery query = new TermQuery(new Term("content", "federated"));
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(4).build();
+        SearchPage allPage = luceneManager.searchPage(all, query, SearchOptions.searchOptionsBuilder().pageSize(100).build());
+
+        Set<String> ids = new HashSet<>();
+        SearchPage page = luceneManager.searchPage(indexes, query, options);
+        Assertions.assertEquals(allPage.getTotalHits(), page.getTotalHits());
+        while (true) {
+            for (LuceneSearchHit hit : page.getHits()) {
+                String id = hit.getDocument().get("id");
+                Assertions.assertTrue(ids.add(id));
+                Assertions.assertEquals("federated" + id.charAt(0), hit.getIndex().getName());
+                float expectedScore = allPage.getHits().stream().filter(h -> h.getDocument().get("id").equals(id)).findFirst().get().getScore();
+                Assertions.assertEquals(expectedScore, hit.getScore(), 0.0001);
+            }
+            if (!page.hasNextPage()) {
+                break;
+            }
+            page = luceneManager.searchPage(indexes, query, options, page.getAfter());
+        }
+        Assertions.assertEquals(allPage.getTotalHits(), ids.size());
+
+        //searcher with global statistics keeps slices and caching of the index searcher
+        try (SearcherLease lease = luceneManager.acquireSearcher(indexes.get(2))) {
+            IndexSearcher global = GlobalStatsSearcher.of(lease.getSearcher(), List.of(lease.getReader()));
+            Assertions.assertSame(sliceExecutor, global.getExecutor());
+            Assertions.assertSame(lease.getSearcher().getSlices(), global.getSlices());
+            Assertions.assertSame(lease.getSearcher().getQueryCache(), global.getQueryCache());
+        } finally {
+            sliceExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void pagingTiedScoresOverSlices() {
+        ExecutorService sliceExecutor = Executors.newFixedThreadPool(2);
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().sliceExecutor(sliceExecutor).maxSegmentsPerSlice(1).build()).build());
+        Index index = new Index("tied");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        //segments grow, so slices (largest segment first) are in reverse doc order
+        int id = 0;
+        for (int segment = 2; segment <= 5; segment++) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < segment; i++) {
+                documents.add(document(String.valueOf(id++), "tied"));
+            }
+            luceneManager.indexDocuments(index, documents, true);
+        }
+        TermQuery query = new TermQuery(new Term("content", "tied"));
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(3).build();
+        try {
+            List<String> ids = new ArrayList<>();
+            SearchPage page = luceneManager.searchPage(index, query, options);
+            while (true) {
+                page.getHits().forEach(hit -> ids.add(hit.getDocument().get("id")));
+                if (!page.hasNextPage()) {
+                    break;
+                }
+                page = luceneManager.searchPage(index, query, options, page.getAfter());
+            }
+            List<String> expected = IntStream.range(0, id).mapToObj(String::valueOf).collect(Collectors.toList());
+            Assertions.assertEquals(expected, ids);
+        } finally {
+            sliceExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void bulkIndex() {
+        Index index = new Index("bulk");
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .indexConfigs(Map.of("bulk", LuceneConfig.indexConfigBuilder().bulkIndexThreads(3).bulkIndexQueueSize(10).build())).build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        luceneManager.openIndex(index, new StandardAnalyzer());
+
+        BulkIndexResult result = luceneManager.bulkIndex(index, IntStream.range(0, 1000).boxed(),
+            i -> document(String.valueOf(i), "bulk document " + i), true);
+        Assertions.assertEquals(1000, result.getDocuments());
+        Assertions.assertEquals(1000, luceneManager.searchPage(index, new TermQuery(new Term("content", "bulk")),
+            SearchOptions.searchOptionsBuilder().build()).getTotalHits());
+
+        Assertions.assertThrows(RuntimeException.class, () -> luceneManager.bulkIndex(index, IntStream.range(0, 1000).boxed(), i -> {
+            throw new IllegalArgumentException("conversion failed");
+        }, false));
+    }
+
+    @Test
+    public void commitPolicy() throws Exception {
+        Index index = new Index("everyN");
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .indexConfigs(Map.of("everyN", LuceneConfig.indexConfigBuilder().commitPolicy(CommitPolicy.EVERY_N_DOCS).commitEveryDocs(3).build()))
+            .build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        luceneManager.openIndex(index, new StandardAnalyzer());
+
+        long generation = luceneManager.indexDocument(index, document("1", "durable"), false);
+        CompletableFuture<Long> durable = luceneManager.whenDurable(index, generation);
+        luceneManager.indexDocument(index, document("2", "durable"), false);
+        Assertions.assertFalse(durable.isDone());
+        luceneManager.indexDocument(index, document("3", "durable"), false);
+        Assertions.assertTrue(durable.get(10, TimeUnit.SECONDS) >= generation);
+        Assertions.assertEquals(3, luceneManager.search(index, new TermQuery(new Term("content", "durable")), true).size());
+
+        generation = luceneManager.indexDocument(index, document("4", "durable"), false);
+        Assertions.assertTrue(luceneManager.commit(index) >= generation);
+        Assertions.assertTrue(luceneManager.whenDurable(index, generation).isDone());
+
+        //documents beyond the threshold count towards the next commit: 1 + 4 commits and leaves 2, one more commits again
+        luceneManager.indexDocuments(index, IntStream.range(5, 9).mapToObj(i -> document(String.valueOf(i), "durable"))
+            .collect(Collectors.toList()), false);
+        generation = luceneManager.indexDocument(index, document("9", "durable"), false);
+        Assertions.assertTrue(luceneManager.whenDurable(index, generation).get(10, TimeUnit.SECONDS) >= generation);
+    }
+
+    @Test
+    public void highlightPage() {
+        Index index = new Index("highlight");
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .highlightsConfig(LuceneConfig.highlightsConfigBuilder().fragmentSizeChars(40).numberOfDocumentFragments(2).parallel(true).build())
+            .build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        FieldType offsetsType = new FieldType(TextField.TYPE_STORED);
+        offsetsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Document document = new Document();
+            document.add(new StringField("id", String.valueOf(i), Field.Store.YES));
+            document.add(new Field("content", "First sentence has no match. Second sentence has lucene in it. Third one is lucene " +
+                "again. Fourth has nothing.", offsetsType));
+            documents.add(document);
+            luceneManager.indexDocuments(index, documents, true);
+            documents.clear();
+        }
+        SearchPage page = luceneManager.highlightPage(index, new TermQuery(new Term("content", "lucene")),
+            SearchOptions.searchOptionsBuilder().pageSize(3).build(), null);
+        Assertions.assertEquals(3, page.getHits().size());
+        for (LuceneSearchHit hit : page.getHits()) {
+            List<String> fragments = hit.getHighlights().get("content");
+            Assertions.assertEquals("Second sentence has <em>lucene</em> in it. Third one is <em>lucene</em> again.", String.join(" ", fragments));
+        }
+    }
+
+    @Test
+    public void documentById() {
+        Index index = new Index("ids");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        luceneManager.indexDocuments(index, List.of(document("1", "one"), document("2", "two")), true);
+        luceneManager.indexDocuments(index, List.of(document("3", "three")), true);
+        luceneManager.refreshSearcher(index);
+
+        Assertions.assertEquals("two", luceneManager.getDocumentById(index, "id", "2").orElseThrow().get("content"));
+        Assertions.assertTrue(luceneManager.getDocumentById(index, "id", "4").isEmpty());
+        List<Document> documents = luceneManager.getDocumentsByIds(index, "id", List.of("3", "4", "1"));
+        Assertions.assertEquals("three", documents.get(0).get("content"));
+        Assertions.assertNull(documents.get(1));
+        Assertions.assertEquals("one", documents.get(2).get("content"));
+
+        //deleted document is skipped after refresh, which reuses lookup state of unchanged segment
+        luceneManager.deleteDocuments(index, new TermQuery(new Term("id", "1")));
+        luceneManager.commit(index);
+        luceneManager.refreshSearcher(index);
+        Assertions.assertTrue(luceneManager.getDocumentById(index, "id", "1").isEmpty());
+        Assertions.assertEquals("three", luceneManager.getDocumentById(index, "id", "3").orElseThrow().get("content"));
+
+        luceneManager.indexDocuments(index, List.of(document("3", "duplicate")), true);
+        luceneManager.refreshSearcher(index);
+        Assertions.assertThrows(IllegalStateException.class, () -> luceneManager.getDocumentById(index, "id", "3"));
+    }
+
+    @Test
+    public void documentsTerms() {
+        Index index = new Index("terms");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        FieldType vectorsType = new FieldType(TextField.TYPE_STORED);
+        vectorsType.setStoreTermVectors(true);
+        vectorsType.setStoreTermVectorPositions(true);
+        vectorsType.setStoreTermVectorOffsets(true);
+        List<Document> documents = new ArrayList<>();
+        for (String[] idContent : new String[][]{{"1", "red fox red"}, {"2", "blue fox"}, {"3", "green"}}) {
+            Document doc = new Document();
+            doc.add(new StringField("id", idContent[0], Field.Store.YES));
+            doc.add(new Field("content", idContent[1], vectorsType));
+            documents.add(doc);
+        }
+        luceneManager.indexDocuments(index, documents, true);
+        luceneManager.refreshSearcher(index);
+
+        List<DocumentTermsData> terms = luceneManager.getDocumentsTerms(index, "id", List.of("1", "4", "2"), "content", true);
+        Assertions.assertNull(terms.get(1));
+        DocumentTermsData first = terms.get(0);
+        Assertions.assertEquals(2, first.getSize());
+        Assertions.assertEquals("fox", first.getTerm(0));
+        Assertions.assertEquals("red", first.getTerm(1));
+        Assertions.assertArrayEquals(new int[]{1, 2}, first.getTermFreqs());
+        Assertions.assertArrayEquals(new int[]{2, 1}, first.getDocFreqs());
+        Assertions.assertArrayEquals(new long[]{2, 2}, first.getTotalTermFreqs());
+        Assertions.assertArrayEquals(new int[]{0, 1, 3}, first.getOffsetsStarts());
+        Assertions.assertArrayEquals(new int[]{4, 0, 8}, first.getStartOffsets());
+        Assertions.assertEquals(List.of("blue", "fox"),
+            terms.get(2).toTermVectorData().stream().map(TermVectorData::getTerm).collect(Collectors.toList()));
+
+        //cached statistics are dropped after refresh
+        luceneManager.indexDocuments(index, List.of(documents.get(1)), true);
+        luceneManager.refreshSearcher(index);
+        List<TermVectorData> termVectorData = luceneManager.getDocumentTerms(index, "id", "3", "content", false);
+        Assertions.assertEquals(1, termVectorData.size());
+        Assertions.assertEquals(3, luceneManager.getDocumentsTerms(index, "id", List.of("1"), "content", false).get(0).getDocFreqs()[0]);
+
+        //columns grow past initial capacity
+        Document longDocument = new Document();
+        longDocument.add(new StringField("id", "5", Field.Store.YES));
+        longDocument.add(new Field("content", IntStream.range(0, 100).mapToObj(i -> "term" + i).collect(Collectors.joining(" ")),
+            vectorsType));
+        luceneManager.indexDocuments(index, List.of(longDocument), true);
+        luceneManager.refreshSearcher(index);
+        DocumentTermsData longTerms = luceneManager.getDocumentsTerms(index, "id", List.of("5"), "content", true).get(0);
+        Assertions.assertEquals(100, longTerms.getSize());
+        Assertions.assertEquals(100, longTerms.getOffsetsStarts()[100]);
+    }
+
+    @Test
+    public void directoryTypes() {
+        Index index = new Index("directories");
+        TermQuery query = new TermQuery(new Term("content", "lucene"));
+        for (DirectoryType directoryType : DirectoryType.values()) {
+            LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+                .indexConfigs(Map.of("directories", LuceneConfig.indexConfigBuilder().directoryType(directoryType).build())).build();
+            luceneManager = new DefaultLuceneManager(luceneConfig);
+            luceneManager.openIndex(index, new StandardAnalyzer());
+            luceneManager.indexDocument(index, document("1", "Lucene " + directoryType), true);
+            Assertions.assertEquals(1, luceneManager.search(index, query, true).size(), directoryType.name());
+            luceneManager.closeLuceneResources();
+        }
+
+        //index on disk, written by the last file system directory, is loaded into memory
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), false).toBuilder()
+            .indexConfigs(Map.of("directories", LuceneConfig.indexConfigBuilder().directoryType(DirectoryType.BYTE_BUFFERS)
+                .loadFromDisk(true).build())).build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        Assertions.assertEquals("Lucene NRT_CACHING", luceneManager.search(index, query, true).get(0).get("content"));
+    }
+
+    @Test
+    public void lazyOpeningAndEviction() throws Exception {
+        //eviction commits while the only commit thread is free
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .lazyOpenIndexes(true).maxOpenWriters(2).idleTimeoutMillis(200).commitThreads(1).build());
+        for (String name : List.of("a", "b", "c")) {
+            luceneManager.openIndex(new Index(name), new StandardAnalyzer());
+        }
+        Assertions.assertTrue(luceneManager.getOpenIndexes().isEmpty());
+
+        TermQuery query = new TermQuery(new Term("content", "lucene"));
+        for (String name : List.of("a", "b", "c")) {
+            luceneManager.indexDocument(new Index(name), document(name, "Lucene " + name), true);
+        }
+        Assertions.assertEquals(Set.of(new Index("b"), new Index("c")), new HashSet<>(luceneManager.getOpenIndexes()));
+        //reopened index keeps its documents
+        Assertions.assertEquals("Lucene a", luceneManager.search(new Index("a"), query, true).get(0).get("content"));
+
+        //leased searcher pins its index
+        try (SearcherLease lease = luceneManager.acquireSearcher(new Index("a"))) {
+            Thread.sleep(600);
+            Assertions.assertEquals(List.of(new Index("a")), luceneManager.getOpenIndexes());
+            Assertions.assertEquals(1, lease.getSearcher().count(query));
+        }
+        Thread.sleep(600);
+        Assertions.assertTrue(luceneManager.getOpenIndexes().isEmpty());
+    }
+
+    @Test
+    public void parallelOpeningWithWarmup() {
+        AtomicInteger warmups = new AtomicInteger();
+        Query warmupQuery = new TermQuery(new Term("content", "lucene")) {
+            @Override
+            public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+                warmups.incrementAndGet();
+                return super.createWeight(searcher, scoreMode, boost);
+            }
+        };
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().warmupQueries(List.of(warmupQuery)).build()).build());
+        Map<Index, Analyzer> analyzers = Map.of(new Index("a"), new StandardAnalyzer(), new Index("b"), new StandardAnalyzer());
+
+        List<IndexStartupStats> startupStats = luceneManager.openIndexes(analyzers);
+        Assertions.assertEquals(analyzers.keySet(), startupStats.stream().map(IndexStartupStats::getIndex).collect(Collectors.toSet()));
+        Assertions.assertEquals(2, warmups.get());
+
+        //refreshed searcher is warmed up before it is published
+        luceneManager.indexDocument(new Index("a"), document("1", "Lucene"), true);
+        luceneManager.refreshSearcher(new Index("a"));
+        Assertions.assertEquals(3, warmups.get());
+    }
+
+    @Test
+    public void resultCache() {
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().resultCacheMaxEntries(2).build()).build());
+        Index index = new Index("cached");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        luceneManager.indexDocument(index, document("1", "Lucene in action"), true);
+        luceneManager.refreshSearcher(index);
+
+        TermQuery lucene = new TermQuery(new Term("content", "lucene"));
+        List<Document> first = luceneManager.search(index, lucene, false);
+        Assertions.assertSame(first, luceneManager.search(index, lucene, false));
+        Assertions.assertEquals(1, luceneManager.getResultCacheStats(index).getHits());
+        Assertions.assertEquals(1, luceneManager.getResultCacheStats(index).getMisses());
+
+        //equal options are the same key, least recently used entry is evicted
+        SearchOptions options = SearchOptions.searchOptionsBuilder().storedFields(Set.of("id")).build();
+        luceneManager.searchPage(index, lucene, options);
+        luceneManager.searchPage(index, lucene, SearchOptions.searchOptionsBuilder().storedFields(Set.of("id")).build());
+        luceneManager.search(index, new TermQuery(new Term("content", "action")), false);
+        ResultCacheStats stats = luceneManager.getResultCacheStats(index);
+        Assertions.assertEquals(2, stats.getHits());
+        Assertions.assertEquals(1, stats.getEvictions());
+        Assertions.assertEquals(2, stats.getEntries());
+
+        //refresh with changes drops results of old reader
+        luceneManager.indexDocument(index, document("2", "Lucene again"), true);
+        luceneManager.refreshSearcher(index);
+        Assertions.assertEquals(0, luceneManager.getResultCacheStats(index).getEntries());
+        Assertions.assertEquals(2, luceneManager.search(index, lucene, false).size());
+    }
+
+    @Test
+    public void metrics() {
+        InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder().metricsListener(metrics).build());
+        Index index = new Index("measured");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        Assertions.assertNull(metrics.getSegmentStats(index));
+        luceneManager.search(index, new TermQuery(new Term("content", "lucene")));
+        Assertions.assertEquals(0, metrics.getSegmentStats(index).getSegments());
+        List<Document> documents = IntStream.range(0, 10).mapToObj(i -> document(String.valueOf(i), "Lucene " + i)).collect(Collectors.toList());
+        luceneManager.indexDocuments(index, documents, true);
+        //few deletes, so merge policy doesn't merge them away
+        luceneManager.deleteDocuments(index, new TermQuery(new Term("id", "2")));
+        luceneManager.commit(index);
+        luceneManager.refreshSearcher(index);
+        luceneManager.highlightPage(index, new TermQuery(new Term("content", "lucene")), SearchOptions.searchOptionsBuilder().build(), null);
+
+        Assertions.assertEquals(10, metrics.getHistogram(index, InMemoryMetricsListener.Metric.INDEXED_DOCUMENTS).getSum());
+        Assertions.assertEquals(1, metrics.getHistogram(index, InMemoryMetricsListener.Metric.DELETE_NANOS).getCount());
+        Assertions.assertEquals(2, metrics.getHistogram(index, InMemoryMetricsListener.Metric.COMMIT_NANOS).getCount());
+        Assertions.assertEquals(1, metrics.getHistogram(index, InMemoryMetricsListener.Metric.REFRESH_NANOS).getCount());
+        Assertions.assertEquals(2, metrics.getHistogram(index, InMemoryMetricsListener.Metric.SEARCH_NANOS).getCount());
+        Assertions.assertEquals(9, metrics.getHistogram(index, InMemoryMetricsListener.Metric.SEARCH_HITS).getSum());
+        Assertions.assertEquals(9, metrics.getHistogram(index, InMemoryMetricsListener.Metric.HIGHLIGHTED_DOCUMENTS).getSum());
+        Assertions.assertTrue(metrics.getHistogram(index, InMemoryMetricsListener.Metric.HIGHLIGHT_FRAGMENT_NANOS).getMax() > 0);
+        Assertions.assertEquals(1, metrics.getSegmentStats(index).getSegments());
+        Assertions.assertEquals(1, metrics.getSegmentStats(index).getPendingDeletes());
+    }
+
+    @Test
+    public void maintenance() {
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().maintenanceStart(LocalTime.of(3, 0)).maintenanceMaxSegments(1).build())
+            .build());
+        Index index = new Index("maintained");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        for (int segment = 0; segment < 3; segment++) {
+            luceneManager.indexDocuments(index, IntStream.range(0, 10).mapToObj(i -> document(String.valueOf(i), "Lucene " + i))
+                .collect(Collectors.toList()), true);
+        }
+        luceneManager.deleteDocuments(index, new TermQuery(new Term("id", "5")));
+
+        MaintenanceReport report = luceneManager.runMaintenance(index);
+        Assertions.assertEquals(3, report.getBefore().getSegments());
+        Assertions.assertEquals(3, report.getBefore().getDeletedDocs());
+        Assertions.assertEquals(1, report.getAfter().getSegments());
+        Assertions.assertEquals(27, report.getAfter().getMaxDoc());
+        Assertions.assertEquals(0, report.getAfter().getDeletedDocs());
+        Assertions.assertEquals(List.of(report.getAfter().getSizeBytes()), report.getAfter().getSegmentSizes());
+
+        //window start is always in the future
+        LocalDateTime now = LocalDateTime.of(2024, 3, 1, 3, 0);
+        Assertions.assertEquals(now.plusDays(1), MaintenanceScheduler.nextStart(now, LocalTime.of(3, 0)));
+        Assertions.assertEquals(now.plusHours(1), MaintenanceScheduler.nextStart(now, LocalTime.of(4, 0)));
+    }
+
+    @Test
+    public void reindexIntoNewGeneration() throws Exception {
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .defaultIndexConfig(LuceneConfig.indexConfigBuilder().reindexMaxSegments(1).build()).build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        Index index = new Index("reindexed");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        luceneManager.indexDocument(index, document("old", "Old content"), true);
+        luceneManager.refreshSearcher(index);
+
+        try (SearcherLease inFlight = luceneManager.acquireSearcher(index)) {
+            BulkIndexResult result = luceneManager.reindex(index, new WhitespaceAnalyzer(), IntStream.range(0, 20).boxed(),
+                i -> document(String.valueOf(i), "New content " + i));
+            Assertions.assertEquals(20, result.getDocuments());
+            Assertions.assertEquals("reindexed@gen1", Files.readString(indexDir.resolve("reindexed.alias")));
+            //new analyzer doesn't lowercase
+            Assertions.assertEquals(20, luceneManager.count(index, new TermQuery(new Term("content", "New"))));
+            Assertions.assertEquals(0, luceneManager.count(index, new TermQuery(new Term("content", "new"))));
+            //old generation serves searches which started before the switch
+            Assertions.assertEquals(1, inFlight.getSearcher().count(new TermQuery(new Term("content", "old"))));
+            Assertions.assertTrue(Files.isDirectory(indexDir.resolve("reindexed")));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.exists(indexDir.resolve("reindexed")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(Files.exists(indexDir.resolve("reindexed")));
+
+        luceneManager.indexDocument(index, document("20", "New writes"), true);
+        luceneManager.closeLuceneResources();
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), false));
+        luceneManager.openIndex(index, new WhitespaceAnalyzer());
+        Assertions.assertEquals(21, luceneManager.count(index, new TermQuery(new Term("content", "New"))));
+    }
+
+    @Test
+    public void backupAndReplica() throws IOException {
+        Path replicas = indexDir.resolve("replicas");
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder().defaultIndexConfig(LuceneConfig
+            .indexConfigBuilder().replicaLocation(replicas.toString()).replicaSyncMillis(60_000).build()).build();
+        luceneManager = new DefaultLuceneManager(luceneConfig);
+        Index index = new Index("primary");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        luceneManager.indexDocuments(index, List.of(document("1", "first"), document("2", "first")), true);
+
+        Path backup = indexDir.resolve("backup");
+        BackupResult first = luceneManager.backup(index, backup);
+        Assertions.assertTrue(first.getCopiedFiles() > 1);
+        luceneManager.indexDocument(index, document("3", "second"), true);
+        BackupResult second = luceneManager.backup(index, backup);
+        //segment of the first commit is reused, only the new segment and segments file are copied
+        Assertions.assertTrue(second.getReusedFiles() > 0);
+        Assertions.assertTrue(second.getGeneration() > first.getGeneration());
+        try (Directory directory = FSDirectory.open(backup); DirectoryReader reader = DirectoryReader.open(directory)) {
+            Assertions.assertEquals(3, reader.numDocs());
+            Assertions.assertEquals(1, DirectoryReader.listCommits(directory).size());
+        }
+
+        //replica is synced in background right after opening, then periodically
+        BackupResult synced = luceneManager.syncReplica(index);
+        Assertions.assertEquals(second.getGeneration(), synced.getGeneration());
+        Assertions.assertEquals(0, luceneManager.syncReplica(index).getCopiedFiles(), "replica is up to date");
+        try (SearcherLease lease = luceneManager.acquireReplicaSearcher(index)) {
+            Assertions.assertEquals(3, lease.getSearcher().count(new MatchAllDocsQuery()));
+            Assertions.assertEquals(1, lease.getSearcher().count(new TermQuery(new Term("content", "second"))));
+        }
+        Assertions.assertTrue(Files.exists(replicas.resolve("primary").resolve("segments_" + Long.toString(synced.getGeneration(),
+            Character.MAX_RADIX))));
+
+        //new generation restarts segment names, so files with the same name and length are compared by checksum
+        luceneManager.reindex(index, new StandardAnalyzer(), Stream.of("1", "2"), id -> document(id, "fresh"));
+        luceneManager.backup(index, backup);
+        try (Directory directory = FSDirectory.open(backup); DirectoryReader reader = DirectoryReader.open(directory)) {
+            Assertions.assertEquals(2, new IndexSearcher(reader).count(new TermQuery(new Term("content", "fresh"))));
+            Assertions.assertEquals(2, reader.numDocs());
+        }
+        luceneManager.syncReplica(index);
+        try (SearcherLease lease = luceneManager.acquireReplicaSearcher(index)) {
+            Assertions.assertEquals(2, lease.getSearcher().count(new TermQuery(new Term("content", "fresh"))));
+        }
+    }
+
+    @Test
+    public void facetsOverDocValues() {
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        Index books = new Index("books");
+        Index films = new Index("films");
+        luceneManager.openIndex(books, new StandardAnalyzer());
+        luceneManager.openIndex(films, new StandardAnalyzer());
+        //two commits, so counts are folded from several segments
+        luceneManager.indexDocuments(books, IntStream.range(0, 6).mapToObj(i -> facetDocument(i, i * 10, "book"))
+            .collect(Collectors.toList()), true);
+        luceneManager.indexDocuments(books, IntStream.range(6, 10).mapToObj(i -> facetDocument(i, i * 10, "book"))
+            .collect(Collectors.toList()), true);
+        luceneManager.indexDocuments(films, IntStream.range(0, 5).mapToObj(i -> facetDocument(i, 100 + i, "film"))
+            .collect(Collectors.toList()), true);
+        luceneManager.refreshSearcher(books);
+        luceneManager.refreshSearcher(films);
+
+        FacetRequest request = FacetRequest.facetRequestBuilder().termFields(Set.of("category")).topTerms(2)
+            .ranges(List.of(new NumericRange("price", "cheap", 0, 50), new NumericRange("price", "expensive", 50, Long.MAX_VALUE)))
+            .statsFields(Set.of("price")).build();
+        FacetResult result = luceneManager.facets(books, new MatchAllDocsQuery(), request);
+        Assertions.assertEquals(10, result.getTotalHits());
+        Assertions.assertEquals(Map.of("book", 10L, "sale", 5L), result.getTermCounts().get("category"));
+        Assertions.assertEquals(List.of(5L, 5L), new ArrayList<>(result.getRangeCounts().get("price").values()));
+        NumericStats price = result.getStats().get("price");
+        Assertions.assertEquals(List.of(10L, 0L, 90L, 450L), List.of(price.getCount(), price.getMin(), price.getMax(), price.getSum()));
+
+        result = luceneManager.facets(List.of(books, films), new TermQuery(new Term("content", "item")), request);
+        Assertions.assertEquals(15, result.getTotalHits());
+        //tie of film and sale by term order
+        Assertions.assertEquals(List.of("book", "film"), new ArrayList<>(result.getTermCounts().get("category").keySet()));
+        Assertions.assertEquals(10L, result.getRangeCounts().get("price").get("expensive"));
+        Assertions.assertEquals(104L, result.getStats().get("price").getMax());
+        Assertions.assertEquals(960L, result.getStats().get("price").getSum());
+    }
+
+    private static Document facetDocument(int i, long price, String category) {
+        Document doc = document(category + i, "item");
+        doc.add(new SortedSetDocValuesField("category", new BytesRef(category)));
+        if (i % 2 == 0 && category.equals("book")) {
+            doc.add(new SortedSetDocValuesField("category", new BytesRef("sale")));
+        }
+        doc.add(new NumericDocValuesField("price", price));
+        return doc;
+    }
+}
@@ -0,0 +1,35 @@
+package com.komante.lucene;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryMetricsListenerTest {
+
+    @Test
+    public void histogramPercentiles() {
+        InMemoryMetricsListener.Histogram histogram = new InMemoryMetricsListener.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        InMemoryMetricsListener.HistogramSnapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(1000, snapshot.getCount());
+        Assertions.assertEquals(1_000_000, snapshot.getMax());
+        Assertions.assertEquals(500_500, snapshot.getMean(), 0.001);
+        assertWithinBucket(500_000, snapshot.getP50());
+        assertWithinBucket(900_000, snapshot.getP90());
+        assertWithinBucket(990_000, snapshot.getP99());
+    }
+
+    @Test
+    public void bucketBounds() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1023, 1024, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = InMemoryMetricsListener.Histogram.bucket(value);
+            Assertions.assertTrue(value <= InMemoryMetricsListener.Histogram.upperBound(bucket), "value " + value);
+            Assertions.assertTrue(bucket == 0 || value > InMemoryMetricsListener.Histogram.upperBound(bucket - 1), "value " + value);
+        }
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && actual <= expected * 1.125, expected + " vs " + actual);
+    }
+}
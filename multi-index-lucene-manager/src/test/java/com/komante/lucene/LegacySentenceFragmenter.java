@@ -4,9 +4,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Used to extract natural (sentence bound) fragment from a text fragment and to highlight selected terms in it
+ * Regex based SentenceFragmenter, before allocation free rewrite. Reference for equivalence tests and benchmarks
  */
-class SentenceFragmenter {
+public class LegacySentenceFragmenter {
     /** finds first sentence beginning (after broken sentence at start */
     public static final Pattern SENTENCE_BEGINNING_PATTERN = Pattern.compile("^[^.!?]*[.!?][.\\s]*");
     public static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[.!?][^.!?]*$");
@@ -18,7 +18,7 @@ class SentenceFragmenter {
 
     private int highlightsFragmentHalfSize;
 
-    public SentenceFragmenter(LuceneConfig.HighlightsConfig highlightsConfig) {
+    public LegacySentenceFragmenter(LuceneConfig.HighlightsConfig highlightsConfig) {
         this.highlightsFragmentHalfSize = highlightsConfig.getFragmentSizeChars()/2;
     }
 
@@ -3,6 +3,8 @@ package com.komante.lucene;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Map;
+
 public class LuceneConfigTest {
 
     @Test
@@ -18,4 +20,16 @@ public class LuceneConfigTest {
         Assertions.assertEquals(21, luceneConfig.getHighlightsConfig().getNumberOfDocumentFragments());
 
     }
+
+    @Test
+    public void indexConfig() {
+        LuceneConfig luceneConfig = new LuceneConfig("/a/b", false);
+        Assertions.assertFalse(luceneConfig.getIndexConfig(new Index("a")).isNrt());
+
+        luceneConfig = luceneConfig.toBuilder()
+            .indexConfigs(Map.of("a", LuceneConfig.indexConfigBuilder().nrt(true).build())).build();
+        Assertions.assertTrue(luceneConfig.getIndexConfig(new Index("a")).isNrt());
+        Assertions.assertEquals(1000, luceneConfig.getIndexConfig(new Index("a")).getNrtMaxStaleMillis());
+        Assertions.assertFalse(luceneConfig.getIndexConfig(new Index("b")).isNrt());
+    }
 }
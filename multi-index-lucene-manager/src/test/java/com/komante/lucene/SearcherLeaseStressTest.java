@@ -0,0 +1,109 @@
+package com.komante.lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Concurrent searches while documents are added and searcher is refreshed. Every retired reader is closed by its last lease */
+public class SearcherLeaseStressTest {
+
+    private static final int THREADS = 4;
+    private static final long RUN_MILLIS = 300;
+
+    @TempDir
+    Path indexDir;
+
+    private LuceneManager luceneManager;
+    private Index index;
+
+    @BeforeEach
+    public void open() {
+        index = new Index("stress");
+        luceneManager = new DefaultLuceneManager(new LuceneConfig(indexDir.toString(), true));
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            documents.add(DefaultLuceneManagerTest.document(String.valueOf(i), "stress document number " + i));
+        }
+        luceneManager.indexDocuments(index, documents, true);
+        luceneManager.refreshSearcher(index);
+    }
+
+    @AfterEach
+    public void close() {
+        luceneManager.closeLuceneResources();
+    }
+
+    @Test
+    public void concurrentSearchesWithRefresh() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<IndexReader> leasedReaders = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        TermQuery query = new TermQuery(new Term("content", "stress"));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    try (SearcherLease lease = luceneManager.acquireSearcher(index)) {
+                        Assertions.assertTrue(lease.getReader().getRefCount() > 0, "leased reader stays open after refresh");
+                        Assertions.assertTrue(lease.getSearcher().count(query) >= 1000);
+                        leasedReaders.add(lease.getReader());
+                    }
+                }
+                return null;
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            start.await();
+            int id = 100000;
+            while (running.get()) {
+                luceneManager.indexDocument(index, DefaultLuceneManagerTest.document(String.valueOf(id++), "stress refresh"), true);
+                luceneManager.refreshSearcher(index);
+            }
+            return null;
+        }));
+        start.countDown();
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        IndexReader current;
+        try (SearcherLease lease = luceneManager.acquireSearcher(index)) {
+            current = lease.getReader();
+        }
+        Assertions.assertTrue(leasedReaders.size() > 1, "searches saw refreshed readers");
+        //searcher manager holds only the current reader, retired ones were closed by their last lease
+        Assertions.assertEquals(1, current.getRefCount());
+        for (IndexReader reader : leasedReaders) {
+            if (reader != current) {
+                Assertions.assertEquals(0, reader.getRefCount());
+            }
+        }
+    }
+}
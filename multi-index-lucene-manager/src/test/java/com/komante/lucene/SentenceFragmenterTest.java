@@ -0,0 +1,54 @@
+package com.komante.lucene;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class SentenceFragmenterTest {
+
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "a", "consectetur", "adipiscing", "elit"};
+    private static final String[] SEPARATORS = {" ", " ", " ", " ", ". ", "! ", "? ", "...", ".\n", " \t", ","};
+
+    @Test
+    public void sameFragmentsAsRegexFragmenter() {
+        Random random = new Random(42);
+        for (int fragmentSize : new int[]{0, 1, 20, 60, 240}) {
+            LuceneConfig.HighlightsConfig highlightsConfig = LuceneConfig.highlightsConfigBuilder().fragmentSizeChars(fragmentSize).build();
+            LegacySentenceFragmenter legacy = new LegacySentenceFragmenter(highlightsConfig);
+            SentenceFragmenter fragmenter = new SentenceFragmenter(highlightsConfig);
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder text = new StringBuilder();
+                int words = 1 + random.nextInt(80);
+                int[] starts = new int[words];
+                int[] ends = new int[words];
+                for (int w = 0; w < words; w++) {
+                    starts[w] = text.length();
+                    text.append(WORDS[random.nextInt(WORDS.length)]);
+                    ends[w] = text.length();
+                    text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                }
+                int w = random.nextInt(words);
+                String content = text.toString();
+                Assertions.assertEquals(legacy.getSentenceFragment(content, null, starts[w], ends[w]),
+                    fragmenter.getSentenceFragment(content, null, starts[w], ends[w]),
+                    () -> "fragment size " + fragmentSize + ", text '" + content + "', term " + starts[w]);
+            }
+        }
+    }
+
+    @Test
+    public void termsInOneSentenceAreMerged() {
+        SentenceFragmenter fragmenter = new SentenceFragmenter(LuceneConfig.highlightsConfigBuilder().fragmentSizeChars(60).build());
+        String text = "First sentence here. The quick fox jumps over the quick dog. Another sentence without anything. "
+            + "Final quick one.";
+        int[] starts = {text.indexOf("quick"), text.indexOf("quick dog"), text.lastIndexOf("quick")};
+        int[] ends = {starts[0] + 5, starts[1] + 5, starts[2] + 5};
+
+        List<String> fragments = fragmenter.getSentenceFragments(text, starts, ends, 3, 12);
+        Assertions.assertEquals(List.of("The <em>quick</em> fox jumps over the <em>quick</em> dog.",
+            fragmenter.getSentenceFragment(text, null, starts[2], ends[2])), fragments);
+        Assertions.assertEquals(1, fragmenter.getSentenceFragments(text, starts, ends, 3, 1).size());
+    }
+}
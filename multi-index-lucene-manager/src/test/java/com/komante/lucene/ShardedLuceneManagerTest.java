@@ -0,0 +1,150 @@
+package com.komante.lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ShardedLuceneManagerTest {
+
+    @TempDir
+    Path indexDir;
+
+    private LuceneManager luceneManager;
+
+    @AfterEach
+    public void close() {
+        if (luceneManager != null) {
+            luceneManager.closeLuceneResources();
+        }
+    }
+
+    @Test
+    public void shardedIndex() {
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder()
+            .indexConfigs(Map.of("sharded", LuceneConfig.indexConfigBuilder().shards(3).build())).build();
+        luceneManager = new ShardedLuceneManager(new DefaultLuceneManager(luceneConfig), luceneConfig);
+        Index index = new Index("sharded");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+        List<Document> documents = IntStream.range(0, 30).mapToObj(i -> DefaultLuceneManagerTest.document(String.valueOf(i),
+            i % 3 == 0 ? "lucene shards" : "lucene")).collect(Collectors.toList());
+        luceneManager.indexDocuments(index, documents, true);
+        luceneManager.refreshSearcher(index);
+
+        for (int shard = 0; shard < 3; shard++) {
+            Assertions.assertTrue(Files.isDirectory(indexDir.resolve("sharded@shard" + shard)));
+            Assertions.assertTrue(luceneManager.count(index.shard(shard), new MatchAllDocsQuery()) > 0);
+        }
+        Assertions.assertEquals(List.of(index), luceneManager.getOpenIndexes());
+        Assertions.assertEquals(30, luceneManager.count(index, new MatchAllDocsQuery()));
+        Assertions.assertEquals(30, luceneManager.search(index, new TermQuery(new Term("content", "lucene"))).size());
+        Assertions.assertEquals("7", luceneManager.getDocumentById(index, "id", "7").orElseThrow().get("id"));
+        Assertions.assertEquals(1, luceneManager.count(index.shard(ShardedLuceneManager.shardOf("7", 3)),
+            new TermQuery(new Term("id", "7"))));
+        List<Document> byIds = luceneManager.getDocumentsByIds(index, "id", List.of("12", "missing", "3", "25"));
+        Assertions.assertEquals(List.of("12", "3", "25"), List.of(byIds.get(0).get("id"), byIds.get(2).get("id"), byIds.get(3).get("id")));
+        Assertions.assertNull(byIds.get(1));
+
+        //pages merged from all shards, by score with global statistics
+        SearchOptions options = SearchOptions.searchOptionsBuilder().pageSize(4).build();
+        Set<String> ids = new HashSet<>();
+        List<Float> scores = new ArrayList<>();
+        SearchPage page = luceneManager.searchPage(index, new TermQuery(new Term("content", "lucene")), options);
+        Assertions.assertEquals(30, page.getTotalHits());
+        while (true) {
+            page.getHits().forEach(hit -> {
+                ids.add(hit.getDocument().get("id"));
+                scores.add(hit.getScore());
+            });
+            if (!page.hasNextPage()) {
+                break;
+            }
+            page = luceneManager.searchPage(index, new TermQuery(new Term("content", "lucene")), options, page.getAfter());
+        }
+        Assertions.assertEquals(30, ids.size());
+        for (int i = 1; i < scores.size(); i++) {
+            Assertions.assertTrue(scores.get(i - 1) >= scores.get(i));
+        }
+        Assertions.assertEquals(4, luceneManager.highlightPage(index, new TermQuery(new Term("content", "shards")), options, null).getHits()
+            .size());
+        //highlights of all shards are merged by score with global statistics, like search
+        Query query = new BooleanQuery.Builder().add(new TermQuery(new Term("content", "lucene")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("content", "shards")), BooleanClause.Occur.SHOULD).build();
+        SearchPage searched = luceneManager.searchPage(index, query, options);
+        SearchPage highlighted = luceneManager.highlightPage(index, query, options, null);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(searched.getHits().get(i).getScore(), highlighted.getHits().get(i).getScore());
+            Assertions.assertEquals(searched.getHits().get(i).getDocument().get("id"), highlighted.getHits().get(i).getDocument().get("id"));
+        }
+        List<LuceneHighlightResult<Document>> highlights = luceneManager.getHighlights(index, query);
+        Assertions.assertEquals(30, highlights.size());
+        highlights.subList(0, 10).forEach(highlight -> Assertions.assertEquals(0,
+            Integer.parseInt(highlight.getDocument().get("id")) % 3));
+
+        luceneManager.deleteDocuments(index, new TermQuery(new Term("id", "7")));
+        luceneManager.upsert(index, "id", List.of("3", "31"), id -> DefaultLuceneManagerTest.document(id, "upserted"), true);
+        luceneManager.refreshSearcher(index);
+        Assertions.assertTrue(luceneManager.getDocumentById(index, "id", "7").isEmpty());
+        Assertions.assertEquals(30, luceneManager.count(index, new MatchAllDocsQuery()));
+        Assertions.assertEquals(2, luceneManager.count(index, new TermQuery(new Term("content", "upserted"))));
+        Assertions.assertThrows(IllegalStateException.class, () -> luceneManager.acquireSearcher(index));
+    }
+
+    @Test
+    public void bulkIndexIntoShards() {
+        //one bulk thread for both shards, the other shard is indexed by its calling thread
+        LuceneConfig luceneConfig = new LuceneConfig(indexDir.toString(), true).toBuilder().bulkThreads(1)
+            .indexConfigs(Map.of("bulk", LuceneConfig.indexConfigBuilder().shards(2).bulkIndexQueueSize(7).build())).build();
+        luceneManager = new ShardedLuceneManager(new DefaultLuceneManager(luceneConfig), luceneConfig);
+        Index index = new Index("bulk");
+        luceneManager.openIndex(index, new StandardAnalyzer());
+
+        BulkIndexResult result = luceneManager.bulkIndex(index, IntStream.range(0, 100).boxed(),
+            i -> DefaultLuceneManagerTest.document(String.valueOf(i), "bulk"), true);
+        luceneManager.refreshSearcher(index);
+        Assertions.assertEquals(100, result.getDocuments());
+        Assertions.assertEquals(100, luceneManager.count(index, new TermQuery(new Term("content", "bulk"))));
+        Assertions.assertEquals(100, luceneManager.count(index.shard(0), new MatchAllDocsQuery())
+            + luceneManager.count(index.shard(1), new MatchAllDocsQuery()));
+        Assertions.assertEquals(2, luceneManager.runMaintenance(index).getAfter().getSegments(), "segments of both shards");
+
+        result = luceneManager.reindex(index, new StandardAnalyzer(), IntStream.range(0, 50).boxed(),
+            i -> DefaultLuceneManagerTest.document(String.valueOf(i), "reindexed"));
+        Assertions.assertEquals(50, result.getDocuments());
+        Assertions.assertEquals(50, luceneManager.count(index, new MatchAllDocsQuery()));
+        Assertions.assertEquals(0, luceneManager.count(index, new TermQuery(new Term("content", "bulk"))));
+
+        //failed conversion aborts all shards, they keep their current generation and built ones are deleted
+        Assertions.assertThrows(IllegalStateException.class, () -> luceneManager.reindex(index, new StandardAnalyzer(),
+            IntStream.range(0, 50).boxed(), i -> {
+                if (i == 40) {
+                    throw new IllegalArgumentException("Can't convert " + i);
+                }
+                return DefaultLuceneManagerTest.document(String.valueOf(i), "failed");
+            }));
+        Assertions.assertEquals(50, luceneManager.count(index, new TermQuery(new Term("content", "reindexed"))));
+        Assertions.assertEquals(0, luceneManager.count(index, new TermQuery(new Term("content", "failed"))));
+        for (int shard = 0; shard < 2; shard++) {
+            Assertions.assertTrue(Files.exists(indexDir.resolve(index.shard(shard).getName() + "@gen1")));
+            Assertions.assertFalse(Files.exists(indexDir.resolve(index.shard(shard).getName() + "@gen2")));
+        }
+    }
+}